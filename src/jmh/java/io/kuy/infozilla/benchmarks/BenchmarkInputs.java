@@ -0,0 +1,57 @@
+/**
+ * BenchmarkInputs.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import io.kuy.infozilla.helpers.RegExHelper;
+
+/**
+ * The texts the benchmarks run on. The base input is the demo bug report, and larger inputs
+ * are made by repeating it, which keeps the mix of structural elements the same.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class BenchmarkInputs {
+
+	/** Where to find the demo bug report, relative to the project directory */
+	public static final String DEMO_FILE = System.getProperty("infozilla.demo", "demo/demo0001.txt");
+
+	private BenchmarkInputs() {
+	}
+
+	/**
+	 * Read the demo bug report the same way the command line tool does.
+	 * @return the demo bug report with linux newlines
+	 */
+	public static String demo() {
+		try {
+			String data = new String(Files.readAllBytes(Paths.get(DEMO_FILE)), StandardCharsets.ISO_8859_1);
+			return RegExHelper.makeLinuxNewlines(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read " + DEMO_FILE + " (set -Dinfozilla.demo to its location)", e);
+		}
+	}
+
+	/**
+	 * Repeat the demo bug report, separated by empty lines.
+	 * @param copies how often to repeat it
+	 * @return a text about <code>copies</code> times as large as the demo bug report
+	 */
+	public static String scaledDemo(int copies) {
+		String demo = demo();
+		StringBuilder sb = new StringBuilder(copies * (demo.length() + 2));
+		for (int i = 0; i < copies; i++) {
+			sb.append(demo);
+			sb.append("\n\n");
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,162 @@
+/**
+ * CorpusBenchmark.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.kuy.infozilla.benchmarks.SyntheticReport.Kind;
+import io.kuy.infozilla.elements.enumeration.Enumeration;
+import io.kuy.infozilla.elements.patch.Patch;
+import io.kuy.infozilla.elements.sourcecode.java.CodeRegion;
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackTrace;
+import io.kuy.infozilla.filters.FilterChainEngine;
+import io.kuy.infozilla.filters.FilterChainResult;
+import io.kuy.infozilla.filters.FilterEnumeration;
+import io.kuy.infozilla.filters.FilterPatches;
+import io.kuy.infozilla.filters.FilterResult;
+import io.kuy.infozilla.filters.FilterSourceCodeJAVA;
+import io.kuy.infozilla.filters.FilterStackTraceJAVA;
+import io.kuy.infozilla.filters.FilterTalkBack;
+import io.kuy.infozilla.filters.IReentrantFilter;
+import io.kuy.infozilla.filters.JavaCodeDB;
+import io.kuy.infozilla.filters.TextSpan;
+
+/**
+ * Measures how the filters and the engines scale with the size of the input, on synthetic bug
+ * reports from the {@link CorpusGenerator}. Before measuring, every filter is run once and the
+ * share of the generated elements it found, and of the near misses it wrongly took, is printed.
+ * Larger inputs can be given on the command line, for example -p size=104857600 for 100 MB.
+ * @author Nicolas Bettenburg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorpusBenchmark {
+
+	/** The length of the synthetic bug report in characters */
+	@Param({"1024", "102400", "1048576"})
+	public int size;
+
+	/** The seed of the corpus generator */
+	@Param({"42"})
+	public long seed;
+
+	private String text;
+
+	private FilterPatches patchFilter;
+	private FilterPatches relaxedPatchFilter;
+	private FilterStackTraceJAVA stacktraceFilter;
+	private FilterStackTraceJAVA stacktraceLexer;
+	private FilterSourceCodeJAVA sourcecodeFilter;
+	private FilterEnumeration enumFilter;
+	private FilterTalkBack talkbackFilter;
+
+	private FilterChainEngine eclipseEngine;
+	private FilterChainEngine mozillaEngine;
+
+	@Setup
+	public void setup() {
+		SyntheticReport report = new CorpusGenerator(seed).generate(size);
+		text = report.getText();
+
+		patchFilter = new FilterPatches();
+		relaxedPatchFilter = new FilterPatches(true);
+		stacktraceFilter = new FilterStackTraceJAVA();
+		stacktraceLexer = new FilterStackTraceJAVA(true);
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
+		enumFilter = new FilterEnumeration();
+		talkbackFilter = new FilterTalkBack();
+
+		eclipseEngine = FilterChainEngine.eclipse();
+		mozillaEngine = FilterChainEngine.mozilla();
+
+		System.out.println();
+		System.out.println("Synthetic bug report of " + text.length() + " characters, seed " + seed);
+		printDetection(report, "patches", patchFilter, Kind.PATCH);
+		printDetection(report, "relaxed patches", relaxedPatchFilter, Kind.RELAXED_PATCH);
+		printDetection(report, "stack traces", stacktraceFilter, Kind.STACKTRACE);
+		printDetection(report, "trace lexer", stacktraceLexer, Kind.STACKTRACE);
+		printDetection(report, "source code", sourcecodeFilter, Kind.SOURCECODE);
+		printDetection(report, "enumerations", enumFilter, Kind.ENUMERATION);
+		printDetection(report, "itemizations", enumFilter, Kind.ITEMIZATION);
+		printDetection(report, "talkback", talkbackFilter, Kind.TALKBACK);
+	}
+
+	/**
+	 * Run a filter on the whole report and print how many of the generated elements it found,
+	 * and how many near misses it took for an element.
+	 */
+	private static void printDetection(SyntheticReport report, String name, IReentrantFilter<?> filter, Kind kind) {
+		FilterResult<?> result = filter.filter(report.getText());
+		List<TextSpan> found = result.getDeletions();
+		System.out.println(String.format("  %-16s found %d of %d, near misses taken %d of %d", name,
+				report.countDetected(kind, found), report.getSpans(kind).size(),
+				report.countDetected(Kind.NEAR_MISS, found), report.getSpans(Kind.NEAR_MISS).size()));
+	}
+
+	@Benchmark
+	public List<Patch> patches() {
+		return patchFilter.filter(text).getElements();
+	}
+
+	@Benchmark
+	public List<Patch> relaxedPatches() {
+		return relaxedPatchFilter.filter(text).getElements();
+	}
+
+	@Benchmark
+	public List<StackTrace> stackTraces() {
+		return stacktraceFilter.filter(text).getElements();
+	}
+
+	@Benchmark
+	public List<StackTrace> stackTraceLexer() {
+		return stacktraceLexer.filter(text).getElements();
+	}
+
+	@Benchmark
+	public List<CodeRegion> sourceCode() {
+		return sourcecodeFilter.filter(text).getElements();
+	}
+
+	@Benchmark
+	public List<Enumeration> enumerations() {
+		return enumFilter.filter(text).getElements();
+	}
+
+	@Benchmark
+	public List<TalkbackTrace> talkback() {
+		return talkbackFilter.filter(text).getElements();
+	}
+
+	@Benchmark
+	public FilterChainResult eclipseEngine() {
+		return eclipseEngine.extract(text);
+	}
+
+	@Benchmark
+	public FilterChainResult mozillaEngine() {
+		return mozillaEngine.extract(text);
+	}
+
+}
@@ -0,0 +1,478 @@
+/**
+ * CorpusGenerator.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.kuy.infozilla.benchmarks.SyntheticReport.Kind;
+import io.kuy.infozilla.benchmarks.SyntheticReport.Span;
+
+/**
+ * Generates synthetic bug reports of any size. A report is a sequence of blocks separated by
+ * empty lines: natural language paragraphs, Java stack traces with causes, patches in the
+ * Index:/==== and the ---/+++ style, Java source code for every category of the default
+ * Java_CodeDB.txt, enumerations, itemizations, Talkback traces, and near misses that look
+ * like one of those but are not. The same seed always gives the same reports.
+ * @author Nicolas Bettenburg
+ *
+ */
+public class CorpusGenerator {
+
+	private static final String[] WORDS = { "the", "editor", "crashes", "when", "I", "open", "a", "file",
+		"after", "saving", "project", "workspace", "build", "view", "window", "again", "still", "happens",
+		"on", "every", "start", "please", "see", "below", "this", "problem", "since", "update", "works",
+		"fine", "with", "older", "version", "dialog", "selection", "it", "and", "not", "for", "menu" };
+
+	private static final String[] PACKAGES = { "org.eclipse.ui.internal", "org.eclipse.jdt.core",
+		"org.eclipse.core.runtime", "org.eclipse.swt.widgets", "org.eclipse.jface.viewers",
+		"org.eclipse.debug.internal.ui", "java.util", "java.io" };
+
+	private static final String[] CLASSES = { "Workbench", "EditorManager", "JavaModel", "Display",
+		"Widget", "PartService", "Launcher", "TreeViewer", "Builder", "Resource", "SafeRunner", "Job" };
+
+	private static final String[] METHODS = { "run", "open", "close", "update", "dispose", "execute",
+		"handleEvent", "createPartControl", "refresh", "save", "getAdapter", "runEventLoop" };
+
+	private static final String[] VARIABLES = { "count", "index", "viewer", "editor", "result", "monitor" };
+
+	private static final String[] EXCEPTIONS = { "java.lang.NullPointerException",
+		"java.lang.IllegalStateException", "java.lang.IllegalArgumentException",
+		"java.lang.ClassCastException", "java.lang.ArrayIndexOutOfBoundsException", "java.io.IOException",
+		"org.eclipse.core.runtime.CoreException", "org.eclipse.swt.SWTException",
+		"java.lang.OutOfMemoryError", "java.lang.StackOverflowError", "java.lang.NoClassDefFoundError" };
+
+	/** The categories of the default Java_CodeDB.txt, one source code snippet is made for each */
+	private static final String[] CODE_CATEGORIES = { "import", "package", "singlecomment", "multicomment",
+		"class", "assignment", "ifstatement", "elsestatement", "functiondef", "functioncall" };
+
+	private static final String[] TALKBACK_LIBRARIES = { "KERNEL32.DLL", "ntdll.dll", "USER32.dll", "xpcom.dll" };
+
+	private static final String[] NEAR_MISSES = { "index-without-patch", "orphan-hunk-header",
+		"dashes-without-pluses", "exception-in-prose", "frames-without-exception", "single-enumeration-item",
+		"scope-operator-in-prose", "equals-in-prose" };
+
+	private final Random random;
+
+	/** How often each kind of block is generated, relative to the others, indexed by Kind.ordinal() */
+	private final int[] weights = new int[Kind.values().length];
+
+	/**
+	 * Create a generator with a mix of blocks that roughly follows the Eclipse and Mozilla bug reports.
+	 * @param seed the seed for the random numbers, the same seed gives the same reports
+	 */
+	public CorpusGenerator(long seed) {
+		this.random = new Random(seed);
+		setWeight(Kind.TEXT, 40);
+		setWeight(Kind.STACKTRACE, 8);
+		setWeight(Kind.PATCH, 5);
+		setWeight(Kind.RELAXED_PATCH, 3);
+		setWeight(Kind.SOURCECODE, 10);
+		setWeight(Kind.ENUMERATION, 5);
+		setWeight(Kind.ITEMIZATION, 4);
+		setWeight(Kind.TALKBACK, 3);
+		setWeight(Kind.NEAR_MISS, 6);
+	}
+
+	/**
+	 * Set how often a kind of block is generated, relative to the other kinds.
+	 * @param kind the kind of block
+	 * @param weight the relative weight, 0 to never generate this kind of block
+	 */
+	public void setWeight(Kind kind, int weight) {
+		if (weight < 0)
+			throw new IllegalArgumentException("Weight must not be negative: " + weight);
+		weights[kind.ordinal()] = weight;
+	}
+
+	/**
+	 * Generate the next bug report.
+	 * @param length the number of characters the report should have at least
+	 * @return the report, which is at most one block longer than <code>length</code>
+	 */
+	public SyntheticReport generate(int length) {
+		int total = 0;
+		for (int weight : weights)
+			total += weight;
+		if (total == 0)
+			throw new IllegalStateException("All weights are 0");
+
+		StringBuilder sb = new StringBuilder(length + 4096);
+		List<Span> spans = new ArrayList<Span>();
+		while (sb.length() < length) {
+			Kind kind = nextKind(total);
+			int start = sb.length();
+			String label = appendBlock(kind, sb);
+			if (kind != Kind.TEXT)
+				spans.add(new Span(kind, label, start, sb.length()));
+			sb.append("\n\n");
+		}
+		return new SyntheticReport(sb.toString(), spans);
+	}
+
+	private Kind nextKind(int total) {
+		int r = random.nextInt(total);
+		for (Kind kind : Kind.values()) {
+			r -= weights[kind.ordinal()];
+			if (r < 0)
+				return kind;
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Append a block of the given kind, without a line terminator after its last line.
+	 * @return the label of the block
+	 */
+	private String appendBlock(Kind kind, StringBuilder sb) {
+		switch (kind) {
+		case TEXT:
+			appendParagraph(sb);
+			return "text";
+		case STACKTRACE:
+			return appendStackTrace(sb);
+		case PATCH:
+			return appendIndexPatch(sb);
+		case RELAXED_PATCH:
+			return appendUnifiedPatch(sb);
+		case SOURCECODE:
+			return appendSourceCode(sb);
+		case ENUMERATION:
+			return appendEnumeration(sb);
+		case ITEMIZATION:
+			return appendItemization(sb);
+		case TALKBACK:
+			return appendTalkback(sb);
+		case NEAR_MISS:
+			return appendNearMiss(sb);
+		default:
+			throw new IllegalArgumentException("Unknown kind " + kind);
+		}
+	}
+
+	// --- Natural language ---
+
+	private <T> T pick(T[] choices) {
+		return choices[random.nextInt(choices.length)];
+	}
+
+	private int between(int min, int max) {
+		return min + random.nextInt(max - min + 1);
+	}
+
+	/**
+	 * Append some words. The words contain none of the characters the filters look for.
+	 */
+	private void appendWords(StringBuilder sb, int count) {
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				sb.append(' ');
+			sb.append(pick(WORDS));
+		}
+	}
+
+	private void appendSentence(StringBuilder sb) {
+		int start = sb.length();
+		appendWords(sb, between(5, 14));
+		sb.setCharAt(start, Character.toUpperCase(sb.charAt(start)));
+		sb.append('.');
+	}
+
+	private void appendParagraph(StringBuilder sb) {
+		int lines = between(1, 4);
+		for (int i = 0; i < lines; i++) {
+			if (i > 0)
+				sb.append('\n');
+			appendSentence(sb);
+		}
+	}
+
+	// --- Java stack traces ---
+
+	private void appendFrame(StringBuilder sb) {
+		String className = pick(CLASSES);
+		sb.append("\n\tat ").append(pick(PACKAGES)).append('.').append(className).append('.').append(pick(METHODS));
+		sb.append('(').append(className).append(".java:").append(between(1, 4000)).append(')');
+	}
+
+	private void appendException(StringBuilder sb) {
+		sb.append(pick(EXCEPTIONS));
+		if (random.nextBoolean()) {
+			sb.append(": ");
+			appendWords(sb, between(2, 8));
+		}
+	}
+
+	private String appendStackTrace(StringBuilder sb) {
+		appendException(sb);
+		int frames = between(2, 15);
+		for (int i = 0; i < frames; i++)
+			appendFrame(sb);
+
+		int causes = random.nextInt(3);
+		for (int c = 0; c < causes; c++) {
+			sb.append("\nCaused by: ");
+			appendException(sb);
+			int causeFrames = between(1, 6);
+			for (int i = 0; i < causeFrames; i++)
+				appendFrame(sb);
+			sb.append("\n\t... ").append(between(1, frames)).append(" more");
+		}
+		return "causes=" + causes;
+	}
+
+	// --- Patches ---
+
+	private String randomPath() {
+		return "src/" + pick(PACKAGES).replace('.', '/') + "/" + pick(CLASSES) + ".java";
+	}
+
+	private void appendCodeLine(StringBuilder sb) {
+		String variable = pick(VARIABLES);
+		switch (random.nextInt(3)) {
+		case 0:
+			sb.append(variable).append(" = ").append(random.nextInt(100)).append(';');
+			break;
+		case 1:
+			sb.append(variable).append('.').append(pick(METHODS)).append("();");
+			break;
+		default:
+			sb.append("return ").append(variable).append(';');
+		}
+	}
+
+	/**
+	 * Append the hunks of a patch, each with consistent line counts in its header.
+	 * @param trailer what may follow the second @@ of the hunk header, such as a method signature
+	 */
+	private void appendHunks(StringBuilder sb, boolean trailer) {
+		int hunks = between(1, 3);
+		int line = between(1, 200);
+		for (int h = 0; h < hunks; h++) {
+			int removed = random.nextInt(4);
+			int added = removed == 0 ? between(1, 4) : random.nextInt(4);
+			int context = 3;
+			sb.append("\n@@ -").append(line).append(',').append(context + removed);
+			sb.append(" +").append(line).append(',').append(context + added).append(" @@");
+			if (trailer && random.nextBoolean())
+				sb.append(" public void ").append(pick(METHODS)).append("()");
+
+			sb.append("\n ");
+			appendCodeLine(sb);
+			for (int i = 0; i < removed; i++) {
+				sb.append("\n-");
+				appendCodeLine(sb);
+			}
+			for (int i = 0; i < added; i++) {
+				sb.append("\n+");
+				appendCodeLine(sb);
+			}
+			sb.append("\n ");
+			appendCodeLine(sb);
+			sb.append("\n }");
+			line += between(20, 200);
+		}
+	}
+
+	private String appendIndexPatch(StringBuilder sb) {
+		String path = randomPath();
+		int revision = between(1000, 99999);
+		sb.append("Index: ").append(path);
+		sb.append("\n===================================================================");
+		sb.append("\nRCS file: /cvsroot/eclipse/").append(path).append(",v");
+		sb.append("\nretrieving revision 1.").append(revision % 100);
+		sb.append("\n--- ").append(path).append("\t(revision ").append(revision).append(')');
+		sb.append("\n+++ ").append(path).append("\t(working copy)");
+		appendHunks(sb, false);
+		return "index";
+	}
+
+	private String appendUnifiedPatch(StringBuilder sb) {
+		String path = randomPath();
+		sb.append("--- a/").append(path);
+		sb.append("\n+++ b/").append(path);
+		appendHunks(sb, true);
+		return "unified";
+	}
+
+	// --- Source code ---
+
+	private String appendSourceCode(StringBuilder sb) {
+		String category = pick(CODE_CATEGORIES);
+		String variable = pick(VARIABLES);
+		if (category.equals("import")) {
+			int imports = between(1, 4);
+			for (int i = 0; i < imports; i++) {
+				if (i > 0)
+					sb.append('\n');
+				sb.append("import ").append(pick(PACKAGES)).append('.').append(pick(CLASSES)).append(';');
+			}
+		} else if (category.equals("package")) {
+			sb.append("package ").append(pick(PACKAGES)).append(';');
+		} else if (category.equals("singlecomment")) {
+			sb.append("// ");
+			appendWords(sb, between(3, 10));
+		} else if (category.equals("multicomment")) {
+			sb.append("/*");
+			int lines = between(1, 4);
+			for (int i = 0; i < lines; i++) {
+				sb.append("\n * ");
+				appendWords(sb, between(3, 10));
+			}
+			sb.append("\n */");
+		} else if (category.equals("class")) {
+			sb.append("public class ").append(pick(CLASSES)).append("Test {");
+			sb.append("\n\tprivate int ").append(variable).append(';');
+			sb.append("\n}");
+		} else if (category.equals("assignment")) {
+			sb.append("int ").append(variable).append(" = ").append(random.nextInt(1000)).append(';');
+		} else if (category.equals("ifstatement")) {
+			sb.append("if (").append(variable).append(" != null) {\n\t");
+			appendCodeLine(sb);
+			sb.append("\n}");
+		} else if (category.equals("elsestatement")) {
+			sb.append("else {\n\t");
+			appendCodeLine(sb);
+			sb.append("\n}");
+		} else if (category.equals("functiondef")) {
+			sb.append("public void ").append(pick(METHODS)).append("(int ").append(variable).append(") {\n\t");
+			appendCodeLine(sb);
+			sb.append("\n}");
+		} else {
+			sb.append(variable).append('.').append(pick(METHODS)).append("().");
+			sb.append(pick(METHODS)).append("(\"").append(pick(WORDS)).append("\");");
+		}
+		return category;
+	}
+
+	// --- Enumerations and itemizations ---
+
+	private String appendEnumeration(StringBuilder sb) {
+		int items = between(2, 6);
+		boolean letters = random.nextBoolean();
+		String format = pick(new String[] { "%s. ", "%s) ", "(%s) " });
+		for (int i = 0; i < items; i++) {
+			if (i > 0)
+				sb.append('\n');
+			String symbol = letters ? String.valueOf((char) ('a' + i)) : String.valueOf(i + 1);
+			sb.append(String.format(format, symbol));
+			appendWords(sb, between(3, 10));
+		}
+		return letters ? "letters" : "numbers";
+	}
+
+	private String appendItemization(StringBuilder sb) {
+		int items = between(2, 6);
+		for (int i = 0; i < items; i++) {
+			if (i > 0)
+				sb.append('\n');
+			sb.append("- ");
+			appendWords(sb, between(3, 10));
+		}
+		return "items=" + items;
+	}
+
+	// --- Talkback traces ---
+
+	private String appendTalkback(StringBuilder sb) {
+		int lines = between(2, 8);
+		for (int i = 0; i < lines; i++) {
+			if (i > 0)
+				sb.append('\n');
+			switch (random.nextInt(3)) {
+			case 0:
+				String className = "ns" + pick(CLASSES);
+				sb.append(className).append("::").append(pick(METHODS));
+				sb.append(" [c:/builds/tinderbox/mozilla/").append(className).append(".cpp, line ");
+				sb.append(between(1, 9000)).append(']');
+				break;
+			case 1:
+				sb.append(pick(TALKBACK_LIBRARIES)).append(" + 0x").append(Integer.toHexString(random.nextInt(0x10000)));
+				sb.append(" (0x").append(Integer.toHexString(0x70000000 + random.nextInt(0x1000000))).append(')');
+				break;
+			default:
+				sb.append(String.format("0x%08x", random.nextInt(Integer.MAX_VALUE)));
+			}
+		}
+		return "lines=" + lines;
+	}
+
+	// --- Near misses ---
+
+	/**
+	 * Append something that looks like a structural element at first sight, but is none.
+	 */
+	private String appendNearMiss(StringBuilder sb) {
+		String label = pick(NEAR_MISSES);
+		if (label.equals("index-without-patch")) {
+			sb.append("Index: ").append(randomPath()).append('\n');
+			appendSentence(sb);
+		} else if (label.equals("orphan-hunk-header")) {
+			sb.append("@@ -").append(between(1, 200)).append(",7 +").append(between(1, 200)).append(",8 @@\n");
+			appendSentence(sb);
+		} else if (label.equals("dashes-without-pluses")) {
+			sb.append("--- ");
+			appendWords(sb, between(2, 5));
+			sb.append(" ---\n");
+			appendSentence(sb);
+		} else if (label.equals("exception-in-prose")) {
+			sb.append(pick(EXCEPTIONS)).append(" is shown ");
+			appendWords(sb, between(3, 8));
+		} else if (label.equals("frames-without-exception")) {
+			appendSentence(sb);
+			appendFrame(sb);
+			appendFrame(sb);
+		} else if (label.equals("single-enumeration-item")) {
+			sb.append("1. ");
+			appendWords(sb, between(3, 10));
+		} else if (label.equals("scope-operator-in-prose")) {
+			sb.append("The ns").append(pick(CLASSES)).append("::").append(pick(METHODS)).append(' ');
+			appendWords(sb, between(3, 8));
+		} else {
+			sb.append("Expected ").append(pick(VARIABLES)).append(" = ").append(pick(VARIABLES)).append(' ');
+			appendWords(sb, between(3, 8));
+		}
+		return label;
+	}
+
+	/**
+	 * Write a corpus of synthetic bug reports. For every report REPORT.txt the ground truth is written
+	 * to REPORT.spans, one element per line: kind, label, start and end separated by tabs.
+	 * @param args the directory to write to, the number of reports, their length in characters and
+	 *             optionally the seed
+	 * @throws IOException if the files cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: CorpusGenerator <directory> <reports> <length> [seed]");
+			System.exit(1);
+		}
+		Path directory = Paths.get(args[0]);
+		int reports = Integer.parseInt(args[1]);
+		int length = Integer.parseInt(args[2]);
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 0L;
+
+		Files.createDirectories(directory);
+		CorpusGenerator generator = new CorpusGenerator(seed);
+		for (int i = 1; i <= reports; i++) {
+			SyntheticReport report = generator.generate(length);
+			String name = String.format("synthetic%05d", i);
+			Files.write(directory.resolve(name + ".txt"), report.getText().getBytes(StandardCharsets.ISO_8859_1));
+			try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(directory.resolve(name + ".spans"),
+					StandardCharsets.ISO_8859_1))) {
+				for (Span span : report.getSpans())
+					out.println(span);
+			}
+		}
+	}
+
+}
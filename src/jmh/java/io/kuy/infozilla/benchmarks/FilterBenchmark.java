@@ -0,0 +1,121 @@
+/**
+ * FilterBenchmark.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.kuy.infozilla.elements.enumeration.Enumeration;
+import io.kuy.infozilla.elements.patch.Patch;
+import io.kuy.infozilla.elements.sourcecode.java.CodeRegion;
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackTrace;
+import io.kuy.infozilla.filters.FilterEnumeration;
+import io.kuy.infozilla.filters.FilterSourceCodeJAVA;
+import io.kuy.infozilla.filters.FilterStackTraceJAVA;
+import io.kuy.infozilla.filters.FilterTalkBack;
+import io.kuy.infozilla.filters.FilterTextRemover;
+import io.kuy.infozilla.filters.JavaCodeDB;
+import io.kuy.infozilla.filters.PatchParser;
+import io.kuy.infozilla.filters.RelaxedPatchParser;
+import io.kuy.infozilla.filters.TextSpan;
+
+/**
+ * Measures every single filter on its own, each on the complete input text.
+ * @author Nicolas Bettenburg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+	/** How many copies of the demo bug report make up the input */
+	@Param({"1", "10", "100"})
+	public int copies;
+
+	private String text;
+	private List<TextSpan> deletions;
+
+	private PatchParser patchParser;
+	private RelaxedPatchParser relaxedPatchParser;
+	private FilterStackTraceJAVA stacktraceFilter;
+	private FilterSourceCodeJAVA sourcecodeFilter;
+	private FilterEnumeration enumFilter;
+	private FilterTalkBack talkbackFilter;
+
+	@Setup
+	public void setup() {
+		text = BenchmarkInputs.scaledDemo(copies);
+
+		patchParser = new PatchParser();
+		relaxedPatchParser = new RelaxedPatchParser();
+		stacktraceFilter = new FilterStackTraceJAVA();
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
+		enumFilter = new FilterEnumeration();
+		talkbackFilter = new FilterTalkBack();
+
+		// Realistic, overlapping cut points for the text remover
+		deletions = new ArrayList<TextSpan>();
+		deletions.addAll(stacktraceFilter.filter(text).getDeletions());
+		deletions.addAll(sourcecodeFilter.filter(text).getDeletions());
+		deletions.addAll(enumFilter.filter(text).getDeletions());
+	}
+
+	@Benchmark
+	public List<Patch> patchParser() {
+		return patchParser.parseForPatches(text);
+	}
+
+	@Benchmark
+	public List<Patch> relaxedPatchParser() {
+		return relaxedPatchParser.parseForPatches(text);
+	}
+
+	@Benchmark
+	public List<StackTrace> stackTraces() {
+		return stacktraceFilter.runFilter(text);
+	}
+
+	@Benchmark
+	public List<CodeRegion> sourceCode() {
+		return sourcecodeFilter.runFilter(text);
+	}
+
+	@Benchmark
+	public List<Enumeration> enumerations() {
+		return enumFilter.runFilter(text);
+	}
+
+	@Benchmark
+	public List<TalkbackTrace> talkback() {
+		return talkbackFilter.runFilter(text);
+	}
+
+	@Benchmark
+	public String textRemover() {
+		FilterTextRemover remover = new FilterTextRemover(text);
+		for (TextSpan span : deletions)
+			remover.markForDeletion(span.getStart(), span.getEnd());
+		return remover.doDelete();
+	}
+
+}
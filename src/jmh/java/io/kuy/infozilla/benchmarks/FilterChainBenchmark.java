@@ -0,0 +1,83 @@
+/**
+ * FilterChainBenchmark.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.kuy.infozilla.filters.FilterChain;
+import io.kuy.infozilla.filters.FilterChainEclipse;
+import io.kuy.infozilla.filters.FilterChainEclipsePS;
+import io.kuy.infozilla.filters.FilterChainEngine;
+import io.kuy.infozilla.filters.FilterChainMozilla;
+import io.kuy.infozilla.filters.FilterChainResult;
+
+/**
+ * Measures the complete filter chains, from the raw input text to the extracted elements.
+ * The classic chains are built for every document, the engines once for all of them.
+ * @author Nicolas Bettenburg
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterChainBenchmark {
+
+	/** How many copies of the demo bug report make up the input */
+	@Param({"1", "10", "100"})
+	public int copies;
+
+	private String text;
+
+	private FilterChainEngine eclipseEngine;
+	private FilterChainEngine mozillaEngine;
+
+	@Setup
+	public void setup() {
+		text = BenchmarkInputs.scaledDemo(copies);
+		eclipseEngine = FilterChainEngine.eclipse();
+		mozillaEngine = FilterChainEngine.mozilla();
+	}
+
+	@Benchmark
+	public FilterChain eclipse() {
+		return new FilterChainEclipse(text);
+	}
+
+	@Benchmark
+	public FilterChain eclipsePS() {
+		return new FilterChainEclipsePS(text);
+	}
+
+	@Benchmark
+	public FilterChain mozilla() {
+		return new FilterChainMozilla(text);
+	}
+
+	@Benchmark
+	public FilterChainResult eclipseEngine() {
+		return eclipseEngine.extract(text);
+	}
+
+	@Benchmark
+	public FilterChainResult mozillaEngine() {
+		return mozillaEngine.extract(text);
+	}
+
+}
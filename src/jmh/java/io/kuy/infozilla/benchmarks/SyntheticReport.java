@@ -0,0 +1,130 @@
+/**
+ * SyntheticReport.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import io.kuy.infozilla.filters.TextSpan;
+
+/**
+ * A generated bug report together with its ground truth: where each structural element
+ * was put into the text, and where near misses were put that no filter should extract.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class SyntheticReport {
+
+	/** The kinds of blocks a synthetic bug report is made of */
+	public enum Kind {
+		TEXT, STACKTRACE, PATCH, RELAXED_PATCH, SOURCECODE, ENUMERATION, ITEMIZATION, TALKBACK, NEAR_MISS
+	}
+
+	/**
+	 * The location of a single generated element.
+	 */
+	public static final class Span {
+		private final Kind kind;
+		private final String label;
+		private final int start;
+		private final int end;
+
+		public Span(Kind kind, String label, int start, int end) {
+			this.kind = kind;
+			this.label = label;
+			this.start = start;
+			this.end = end;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return what exactly was generated, such as the CodeDB category of a source code element
+		 */
+		public String getLabel() {
+			return label;
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getEnd() {
+			return end;
+		}
+
+		public String toString() {
+			return kind + "\t" + label + "\t" + start + "\t" + end;
+		}
+	}
+
+	private final String text;
+	private final List<Span> spans;
+
+	public SyntheticReport(String text, List<Span> spans) {
+		this.text = text;
+		this.spans = Collections.unmodifiableList(new ArrayList<Span>(spans));
+	}
+
+	/**
+	 * @return the text of the bug report, with linux newlines
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the ground truth spans of all elements except natural language text, in text order
+	 */
+	public List<Span> getSpans() {
+		return spans;
+	}
+
+	/**
+	 * @return the ground truth spans of one kind of element, in text order
+	 */
+	public List<Span> getSpans(Kind kind) {
+		List<Span> result = new ArrayList<Span>();
+		for (Span span : spans)
+			if (span.getKind() == kind)
+				result.add(span);
+		return result;
+	}
+
+	/**
+	 * Count how many generated elements of a kind were found by a filter. An element counts as
+	 * found if any of the extracted spans overlaps it. For near misses this counts false positives.
+	 * @param kind the kind of element to check
+	 * @param extracted the spans of the elements a filter extracted, in the coordinates of the text
+	 * @return the number of elements of that kind that overlap an extracted span
+	 */
+	public int countDetected(Kind kind, List<TextSpan> extracted) {
+		List<TextSpan> sorted = new ArrayList<TextSpan>(extracted);
+		Collections.sort(sorted, new Comparator<TextSpan>() {
+			public int compare(TextSpan a, TextSpan b) {
+				return Integer.compare(a.getStart(), b.getStart());
+			}
+		});
+
+		// Sweep over both lists, remembering the furthest end of the extracted spans seen so far
+		int detected = 0;
+		int next = 0;
+		int furthestEnd = -1;
+		for (Span span : getSpans(kind)) {
+			while (next < sorted.size() && sorted.get(next).getStart() < span.getEnd()) {
+				furthestEnd = Math.max(furthestEnd, sorted.get(next).getEnd());
+				next++;
+			}
+			if (furthestEnd > span.getStart())
+				detected++;
+		}
+		return detected;
+	}
+
+}
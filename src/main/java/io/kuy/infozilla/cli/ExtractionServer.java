@@ -0,0 +1,226 @@
+package io.kuy.infozilla.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+import io.kuy.infozilla.filters.FilterChainEngine;
+import io.kuy.infozilla.filters.FilterChainResult;
+import io.kuy.infozilla.helpers.ConcurrentServices;
+import io.kuy.infozilla.helpers.DataExportUtility;
+import io.kuy.infozilla.helpers.LinuxNewlineReader;
+
+/**
+ * A long running extraction service that keeps a warm {@link FilterChainEngine} and
+ * answers requests over a simple framed protocol, either on stdin/stdout or on a
+ * local TCP port.
+ * <p>
+ * A request is a line holding the length of the document in bytes, followed by the
+ * document itself in the input character set. Every request is answered, in request
+ * order, by a line <code>OK &lt;length&gt;</code> followed by that many bytes of UTF-8 XML,
+ * or by <code>ERROR &lt;length&gt;</code> followed by an UTF-8 error message. An empty
+ * line or the end of the input closes the session.
+ */
+public class ExtractionServer {
+
+  private final FilterChainEngine engine;
+  private final Charset inputCharset;
+  private final ExecutorService workers;
+  private final int maxPending;
+
+  /** Marks the end of a session in the queue of pending responses */
+  private static final Future<byte[]> END_OF_SESSION = CompletableFuture.completedFuture(null);
+
+  /**
+   * @param engine the filter chain used for every request
+   * @param inputCharset the character set documents are sent in
+   * @param threads the number of documents to process in parallel, at least 1
+   */
+  public ExtractionServer(FilterChainEngine engine, Charset inputCharset, int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("A server needs at least one thread, not " + threads);
+    }
+    this.engine = engine;
+    this.inputCharset = inputCharset;
+    this.workers = Executors.newFixedThreadPool(threads);
+    this.maxPending = 2 * threads;
+  }
+
+  /**
+   * Accept connections on the loopback interface and serve each of them. This method never returns normally.
+   * @param port the TCP port to listen on
+   * @throws IOException if the server socket can not be opened
+   */
+  public void listen(int port) throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      System.err.println("infozilla listening on " + serverSocket.getLocalSocketAddress());
+      while (true) {
+        Socket connection = serverSocket.accept();
+        ConcurrentServices.submit(() -> {
+          try (Socket s = connection) {
+            serve(s.getInputStream(), s.getOutputStream());
+          } catch (Exception e) {
+            System.err.println("Error while serving " + connection.getRemoteSocketAddress());
+            e.printStackTrace();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Serve a single session: read requests from <code>in</code> until the session ends and
+   * stream the responses to <code>out</code> as soon as they are ready.
+   * @param in the stream to read requests from
+   * @param out the stream to write responses to
+   * @throws IOException if reading requests or writing responses fails
+   * @throws InterruptedException if the session was interrupted
+   */
+  public void serve(InputStream in, OutputStream out) throws IOException, InterruptedException {
+    InputStream input = new BufferedInputStream(in);
+    OutputStream output = new BufferedOutputStream(out);
+
+    // Requests are processed in parallel, a writer sends the responses back in request order
+    BlockingQueue<Future<byte[]>> pending = new ArrayBlockingQueue<Future<byte[]>>(maxPending);
+    Future<?> writer = ConcurrentServices.submit(() -> {
+      writeResponses(pending, output);
+      return null;
+    });
+
+    try {
+      String header;
+      while ((header = readLine(input)) != null && header.length() > 0) {
+        Future<byte[]> response;
+        try {
+          byte[] document = readDocument(input, header);
+          response = workers.submit(() -> respond(document));
+        } catch (IOException e) {
+          // We can not find the next request after a broken one, so this ends the session
+          enqueue(pending, CompletableFuture.completedFuture(frame("ERROR", e.getMessage())), writer);
+          break;
+        }
+        if (!enqueue(pending, response, writer))
+          break;
+      }
+    } finally {
+      enqueue(pending, END_OF_SESSION, writer);
+    }
+
+    try {
+      writer.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Stop accepting work and release the worker threads.
+   */
+  public void shutdown() {
+    workers.shutdown();
+  }
+
+  private boolean enqueue(BlockingQueue<Future<byte[]>> pending, Future<byte[]> response, Future<?> writer) throws InterruptedException {
+    // Give up if the writer is gone (e.g. the client closed the connection)
+    while (!pending.offer(response, 100, TimeUnit.MILLISECONDS)) {
+      if (writer.isDone())
+        return false;
+    }
+    return true;
+  }
+
+  private void writeResponses(BlockingQueue<Future<byte[]>> pending, OutputStream output) throws IOException, InterruptedException {
+    while (true) {
+      Future<byte[]> response = pending.take();
+      if (response == END_OF_SESSION)
+        break;
+      try {
+        output.write(response.get());
+      } catch (ExecutionException e) {
+        output.write(frame("ERROR", String.valueOf(e.getCause())));
+      }
+      output.flush();
+    }
+    output.flush();
+  }
+
+  private byte[] respond(byte[] document) {
+    try {
+      FilterChainResult result = engine.extract(LinuxNewlineReader.decode(document, inputCharset));
+
+      Element rootE = DataExportUtility.getXMLExport(result, new Timestamp(new Date().getTime()));
+      Element textE = new Element("CleanedText");
+      textE.setText(result.getOutputText());
+      rootE.addContent(textE);
+
+      XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
+      return frame("OK", outputter.outputString(new Document(rootE)));
+    } catch (Exception e) {
+      return frame("ERROR", e.toString());
+    }
+  }
+
+  private static byte[] frame(String status, String payload) {
+    byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+    byte[] header = (status + " " + data.length + "\n").getBytes(StandardCharsets.US_ASCII);
+    byte[] frame = new byte[header.length + data.length];
+    System.arraycopy(header, 0, frame, 0, header.length);
+    System.arraycopy(data, 0, frame, header.length, data.length);
+    return frame;
+  }
+
+  private static byte[] readDocument(InputStream input, String header) throws IOException {
+    int length;
+    try {
+      length = Integer.parseInt(header.trim());
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed request header: " + header);
+    }
+    if (length < 0)
+      throw new IOException("Malformed request header: " + header);
+
+    byte[] document = input.readNBytes(length);
+    if (document.length < length)
+      throw new EOFException("Expected " + length + " bytes but the input ended after " + document.length);
+    return document;
+  }
+
+  private static String readLine(InputStream input) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = input.read()) != -1) {
+      if (b == '\n')
+        return line.toString(StandardCharsets.US_ASCII.name());
+      if (b != '\r')
+        line.write(b);
+    }
+    return line.size() > 0 ? line.toString(StandardCharsets.US_ASCII.name()) : null;
+  }
+
+}
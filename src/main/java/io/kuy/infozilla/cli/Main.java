@@ -1,24 +1,40 @@
 package io.kuy.infozilla.cli;
 
 import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 
-import io.kuy.infozilla.filters.FilterChainEclipse;
+import io.kuy.infozilla.filters.FilterChainEngine;
+import io.kuy.infozilla.filters.FilterChainResult;
+import io.kuy.infozilla.filters.FilterStatistics;
+import io.kuy.infozilla.helpers.ConcurrentServices;
 import io.kuy.infozilla.helpers.DataExportUtility;
+import io.kuy.infozilla.helpers.LinuxNewlineReader;
+import io.kuy.infozilla.helpers.MappedText;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.Spec;
 
 /**
  * Main
@@ -41,30 +57,157 @@ public class Main implements Runnable{
   @Option(names = "--charset", description = "Character Set of Input (default=ISO-8859-1)")
   private String inputCharset = "ISO-8859-1";
 
-  @Parameters(arity = "1..*", paramLabel = "FILE", description = "File(s) to process.")
+  private int threads = 1;
+
+  @Option(names = "--threads", description = "Number of files to process in parallel (default=1)")
+  private void setThreads(int threads) {
+    if (threads < 1) {
+      throw new ParameterException(spec.commandLine(), "Invalid value for option '--threads': " + threads + " is not a positive number");
+    }
+    this.threads = threads;
+  }
+
+  @Option(names = "--server", description = "Serve framed requests on stdin/stdout instead of processing files")
+  private boolean serveStdio = false;
+
+  @Option(names = "--port", description = "Serve framed requests on this local TCP port instead of processing files")
+  private int port = -1;
+
+  @Option(names = "--regex-budget", description = "Characters the regular expressions may read per document, 0 for no limit (default=0)")
+  private long regexBudget = 0;
+
+  @Option(names = "--regex-filter-budget", description = "Characters the regular expressions of one filter may read per document, 0 for no limit (default=0)")
+  private long regexFilterBudget = 0;
+
+  @Option(names = "--trace-lexer", description = "Find Java stack traces with the linear time lexer instead of the regular expressions (default=false)")
+  private boolean traceLexer = false;
+
+  @Option(names = "--mmap", description = "Map the input files into memory instead of reading them, for single byte character sets only (default=false)")
+  private boolean mapInput = false;
+
+  @Option(names = "--stats", description = "Print time, allocations and results of every filter stage to stderr when done")
+  private boolean printStats = false;
+
+  @Parameters(arity = "0..*", paramLabel = "FILE", description = "File(s) to process.")
   private File[] inputFiles;
 
+  @Spec
+  private CommandSpec spec;
+
   
   @Override
   public void run() {
-    
-    for (File f : inputFiles) {
-      try {
-        process(f);
-      } catch (Exception e) {
-        e.printStackTrace();
-        System.exit(1);
+    // The engine is built once and shared by all files and workers
+    FilterChainEngine engine = FilterChainEngine.eclipse(withPatches, withStackTraces, withCode, withLists)
+        .withRegexBudget(regexBudget, regexFilterBudget)
+        .withStackTraceLexer(traceLexer);
+    FilterStatistics.getDefault().setEnabled(printStats);
+    if (mapInput && !MappedText.supports(Charset.forName(inputCharset))) {
+      System.err.println("Cannot map files in " + inputCharset + ", reading them instead");
+      mapInput = false;
+    }
+
+    if (serveStdio || port >= 0) {
+      serve(engine);
+      printStatistics();
+      return;
+    }
+    if (inputFiles == null || inputFiles.length == 0) {
+      throw new ParameterException(spec.commandLine(), "Missing required parameter: FILE");
+    }
+
+    int failures = 0;
+
+    if (threads == 1) {
+      for (File f : inputFiles) {
+        try {
+          System.out.print(process(engine, f));
+        } catch (Exception e) {
+          reportFailure(f, e);
+          failures++;
+        }
+      }
+    } else {
+      // Fan the files out over a fixed pool of workers, but collect the
+      // results in submission order so the console output stays deterministic.
+      ExecutorService workers = Executors.newFixedThreadPool(threads);
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (File f : inputFiles) {
+        results.add(workers.submit(() -> process(engine, f)));
+      }
+      workers.shutdown();
+
+      for (int i = 0; i < inputFiles.length; i++) {
+        try {
+          System.out.print(results.get(i).get());
+        } catch (ExecutionException e) {
+          reportFailure(inputFiles[i], e.getCause());
+          failures++;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          workers.shutdownNow();
+          System.exit(1);
+        }
       }
     }
-    
+
+    printStatistics();
+
+    if (failures > 0) {
+      System.err.println(failures + " of " + inputFiles.length + " file(s) could not be processed");
+      System.exit(1);
+    }
+  }
+
+  private void serve(FilterChainEngine engine) {
+    ExtractionServer server = new ExtractionServer(engine, Charset.forName(inputCharset), threads);
+    try {
+      if (port >= 0) {
+        server.listen(port);
+      } else {
+        server.serve(System.in, System.out);
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+      System.exit(1);
+    } finally {
+      server.shutdown();
+      ConcurrentServices.shutdown();
+    }
   }
 
-  private void process(File f) throws Exception {
-    // Read file    
-    String data = Files.readString(f.toPath(), Charset.forName(inputCharset));
+  private void printStatistics() {
+    if (printStats) {
+      FilterStatistics.getDefault().printReport(System.err);
+    }
+  }
+
+  private void reportFailure(File f, Throwable t) {
+    System.err.println("Error while processing " + f.getAbsolutePath());
+    t.printStackTrace();
+  }
+
+  /**
+   * Run infozilla on a single file and write the cleaned and XML output next to it.
+   * @param engine the filter chain to run
+   * @param f the file to process
+   * @return the summary that should be printed for this file
+   * @throws Exception if the file could not be read, processed or written
+   */
+  private String process(FilterChainEngine engine, File f) throws Exception {
+    StringWriter summary = new StringWriter();
+    PrintWriter out = new PrintWriter(summary);
+
+    // Read file and normalize its newlines while decoding, or map it and decode the characters as the filters read them
+    CharSequence data;
+    if (mapInput) {
+      data = MappedText.map(f.toPath(), Charset.forName(inputCharset));
+    } else {
+      data = LinuxNewlineReader.readString(f.toPath(), Charset.forName(inputCharset));
+    }
 
     // Run infozilla
-    FilterChainEclipse infozilla_filters = new FilterChainEclipse(data, withPatches, withStackTraces, withCode, withLists);
+    FilterChainResult infozilla_filters = engine.extract(data);
 
     // Infozilla remembers the original input text
     // String original_text = infozilla_filters.getInputText();
@@ -73,27 +216,29 @@ public class Main implements Runnable{
     // the remaining (natural language text parts) of the input.
     String filtered_text = infozilla_filters.getOutputText();
     
-    System.out.println("Extracted Structural Elements from " + f.getAbsolutePath());
-    System.out.println(infozilla_filters.getPatches().size() + "\t Patches");
-    System.out.println(infozilla_filters.getTraces().size() + "\t Stack Traces");
-    System.out.println(infozilla_filters.getRegions().size() + "\t Source Code Fragments");
-    System.out.println(infozilla_filters.getEnumerations().size() + "\t Enumerations");
+    out.println("Extracted Structural Elements from " + f.getAbsolutePath());
+    out.println(infozilla_filters.getPatches().size() + "\t Patches");
+    out.println(infozilla_filters.getTraces().size() + "\t Stack Traces");
+    out.println(infozilla_filters.getRegions().size() + "\t Source Code Fragments");
+    out.println(infozilla_filters.getEnumerations().size() + "\t Enumerations");
+    if (infozilla_filters.isPartial()) {
+      out.println("Warning: a filter ran out of its regular expression budget, the results may be incomplete");
+    }
     
-    System.out.println("Writing Cleaned Output");
+    out.println("Writing Cleaned Output");
     Files.writeString(Path.of(f.getAbsolutePath() + ".cleaned"), filtered_text, Charset.forName(inputCharset), StandardOpenOption.CREATE );
     
-    Element rootE = new Element("infozilla-output");
-    rootE.addContent(DataExportUtility.getXMLExportOfPatches(infozilla_filters.getPatches(), true));
-    rootE.addContent(DataExportUtility.getXMLExportOfStackTraces(infozilla_filters.getTraces(), true, new Timestamp(new Date().getTime())));
-    rootE.addContent(DataExportUtility.getXMLExportOfSourceCode(infozilla_filters.getRegions(), true));
-    rootE.addContent(DataExportUtility.getXMLExportOfEnumerations(infozilla_filters.getEnumerations(), true));
+    Element rootE = DataExportUtility.getXMLExport(infozilla_filters, new Timestamp(new Date().getTime()));
     
     Document doc = new Document(rootE);
     XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
     String xmlDoc = outputter.outputString(doc);
     
-    System.out.println("Writing XML Output");
+    out.println("Writing XML Output");
     Files.writeString(Path.of(f.getAbsolutePath() + ".result.xml"), xmlDoc, Charset.forName(inputCharset), StandardOpenOption.CREATE );
+
+    out.flush();
+    return summary.toString();
   }
 
   public static void main(String[] args) {
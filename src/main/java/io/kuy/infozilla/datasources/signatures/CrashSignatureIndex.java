@@ -0,0 +1,245 @@
+/**
+ * CrashSignatureIndex.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.datasources.signatures;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.elements.stacktrace.java.TraceFingerprint;
+
+/**
+ * An index from crash signatures, the {@link TraceFingerprint}s of stack traces, to the bug
+ * reports they were found in, kept in a file. Which reports share a crash, how often it was
+ * reported and when it was seen first and last is answered from a hash table, without going
+ * through the reports again.
+ * <p>
+ * The file is a journal that every sighting is appended to as a record of fixed length, and
+ * that is read back into the hash table when the index is opened. A record that was cut short,
+ * because the process ended while writing it, is dropped when the index is opened again.
+ * @author Nicolas Bettenburg
+ *
+ */
+public class CrashSignatureIndex implements Closeable {
+
+	/** The 128 bit key, the bug id and the time of a sighting */
+	private static final int RECORD_LENGTH = 8 + 8 + 4 + 8;
+
+	/**
+	 * What the index knows about a crash signature.
+	 */
+	public static final class Signature {
+		private final TraceFingerprint fingerprint;
+		private final int count;
+		private final long firstSeen;
+		private final long lastSeen;
+		private final int[] bugIds;
+
+		Signature(TraceFingerprint fingerprint, int count, long firstSeen, long lastSeen, int[] bugIds) {
+			this.fingerprint = fingerprint;
+			this.count = count;
+			this.firstSeen = firstSeen;
+			this.lastSeen = lastSeen;
+			this.bugIds = bugIds;
+		}
+
+		/**
+		 * @return the fingerprint of the crash
+		 */
+		public TraceFingerprint getFingerprint() {
+			return fingerprint;
+		}
+
+		/**
+		 * @return how often the crash was added to the index
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the earliest time the crash was seen, in milliseconds since the epoch
+		 */
+		public long getFirstSeen() {
+			return firstSeen;
+		}
+
+		/**
+		 * @return the latest time the crash was seen, in milliseconds since the epoch
+		 */
+		public long getLastSeen() {
+			return lastSeen;
+		}
+
+		/**
+		 * @return the ids of the bug reports the crash was found in, in ascending order and each once
+		 */
+		public int[] getBugIds() {
+			return bugIds.clone();
+		}
+	}
+
+	/**
+	 * The sightings of a crash signature, updated in place while the index grows.
+	 */
+	private static final class Entry {
+		int count;
+		long firstSeen = Long.MAX_VALUE;
+		long lastSeen = Long.MIN_VALUE;
+		int[] bugIds = new int[1];
+		int numBugIds;
+
+		void add(int bugId, long seen) {
+			count++;
+			firstSeen = Math.min(firstSeen, seen);
+			lastSeen = Math.max(lastSeen, seen);
+			// Reports usually come in the order of their ids, which appends at the end
+			int at = Arrays.binarySearch(bugIds, 0, numBugIds, bugId);
+			if (at >= 0)
+				return;
+			at = -at - 1;
+			if (numBugIds == bugIds.length)
+				bugIds = Arrays.copyOf(bugIds, 2 * numBugIds);
+			System.arraycopy(bugIds, at, bugIds, at + 1, numBugIds - at);
+			bugIds[at] = bugId;
+			numBugIds++;
+		}
+	}
+
+	private final Path file;
+	private final Map<TraceFingerprint, Entry> signatures;
+	private final DataOutputStream journal;
+
+	private CrashSignatureIndex(Path file, Map<TraceFingerprint, Entry> signatures) throws IOException {
+		this.file = file;
+		this.signatures = signatures;
+		this.journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+	}
+
+	/**
+	 * Open an index, or create it if the file does not exist yet.
+	 * @param file the file that holds the index
+	 * @return the index, with everything that was added to it before
+	 * @throws IOException if the file cannot be read or written
+	 */
+	public static CrashSignatureIndex open(Path file) throws IOException {
+		Map<TraceFingerprint, Entry> signatures = new HashMap<TraceFingerprint, Entry>();
+		if (Files.exists(file)) {
+			long records = Files.size(file) / RECORD_LENGTH;
+			try (InputStream input = Files.newInputStream(file)) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+				for (long i = 0; i < records; i++)
+					sighting(signatures, TraceFingerprint.fromKey(in.readLong(), in.readLong()), in.readInt(), in.readLong());
+			} catch (EOFException e) {
+				throw new IOException(file + " changed while it was read", e);
+			}
+			// Drop a record that was not written completely
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				if (channel.size() > records * RECORD_LENGTH)
+					channel.truncate(records * RECORD_LENGTH);
+			}
+		}
+		return new CrashSignatureIndex(file, signatures);
+	}
+
+	private static void sighting(Map<TraceFingerprint, Entry> signatures, TraceFingerprint fingerprint, int bugId, long seen) {
+		Entry entry = signatures.get(fingerprint);
+		if (entry == null) {
+			entry = new Entry();
+			signatures.put(fingerprint, entry);
+		}
+		entry.add(bugId, seen);
+	}
+
+	/**
+	 * Add a sighting of a crash.
+	 * @param fingerprint the fingerprint of the crash
+	 * @param bugId the id of the bug report the crash was found in
+	 * @param seen when the crash was seen, in milliseconds since the epoch
+	 * @throws IOException if the sighting cannot be written to the file
+	 */
+	public synchronized void add(TraceFingerprint fingerprint, int bugId, long seen) throws IOException {
+		journal.writeLong(fingerprint.getHigh());
+		journal.writeLong(fingerprint.getLow());
+		journal.writeInt(bugId);
+		journal.writeLong(seen);
+		// Counted once it was written, and kept by its key alone, without the signature text
+		sighting(signatures, TraceFingerprint.fromKey(fingerprint.getHigh(), fingerprint.getLow()), bugId, seen);
+	}
+
+	/**
+	 * Add a sighting of the crash of a stack trace.
+	 * @param trace the stack trace
+	 * @param bugId the id of the bug report the trace was found in
+	 * @param seen when the trace was seen, in milliseconds since the epoch
+	 * @throws IOException if the sighting cannot be written to the file
+	 */
+	public void add(StackTrace trace, int bugId, long seen) throws IOException {
+		add(trace.getFingerprint(), bugId, seen);
+	}
+
+	/**
+	 * Look up a crash.
+	 * @param fingerprint the fingerprint of the crash
+	 * @return what the index knows about the crash, or null if it was never added
+	 */
+	public synchronized Signature lookup(TraceFingerprint fingerprint) {
+		Entry entry = signatures.get(fingerprint);
+		if (entry == null)
+			return null;
+		return new Signature(fingerprint, entry.count, entry.firstSeen, entry.lastSeen,
+				Arrays.copyOf(entry.bugIds, entry.numBugIds));
+	}
+
+	/**
+	 * Look up the crash of a stack trace.
+	 * @param trace the stack trace
+	 * @return what the index knows about its crash, or null if it was never added
+	 */
+	public Signature lookup(StackTrace trace) {
+		return lookup(trace.getFingerprint());
+	}
+
+	/**
+	 * @return how many different crash signatures the index holds
+	 */
+	public synchronized int size() {
+		return signatures.size();
+	}
+
+	/**
+	 * @return the file that holds the index
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * Write all sightings added so far to the file.
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void flush() throws IOException {
+		journal.flush();
+	}
+
+	public synchronized void close() throws IOException {
+		journal.close();
+	}
+
+}
@@ -0,0 +1,377 @@
+/**
+ * TraceSimilarityIndex.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.datasources.signatures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackEntry;
+import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackTrace;
+
+/**
+ * Finds the stack traces most similar to a given one among a large number of traces, also those
+ * that differ from it by a frame or two and so have another {@link io.kuy.infozilla.elements.stacktrace.java.TraceFingerprint}.
+ * <p>
+ * A trace is seen as the set of its pairs of adjacent frames, with the locations of the frames left
+ * out. The similarity of two traces is the Jaccard similarity of these sets, which is estimated with
+ * MinHash: of every trace the index keeps the smallest value of a number of hash functions over
+ * the set, and two traces agree on about as many of them as their sets are similar. The values are
+ * split into bands, and locality sensitive hashing puts traces into the same bucket that agree on
+ * all values of a band. A query only looks at the traces that share a bucket with it, and at no more
+ * than the {@link #MAX_BUCKET_CANDIDATES} added last to each bucket, so it does not get slower with the
+ * number of traces. The bucket of a crash that is reported over and over again grows large, but its
+ * traces are much the same. With the default 16 bands of 4 values, traces with a similarity of 0.5
+ * are found with a probability of 64%, those with 0.8 with 99.9%.
+ * <p>
+ * Traces can be added at any time, also while other threads look for similar ones.
+ * @author Nicolas Bettenburg
+ *
+ */
+public class TraceSimilarityIndex {
+
+	/** How many bands the values are split into, unless asked for otherwise */
+	public static final int DEFAULT_BANDS = 16;
+
+	/** How many values each band has, unless asked for otherwise */
+	public static final int DEFAULT_ROWS = 4;
+
+	/** How many of the traces in a bucket a query looks at, the ones added last */
+	public static final int MAX_BUCKET_CANDIDATES = 256;
+
+	/** The largest array the virtual machine can be relied on to allocate */
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	/**
+	 * A trace found to be similar to another one.
+	 */
+	public static final class Match {
+		private final int id;
+		private final double similarity;
+
+		Match(int id, double similarity) {
+			this.id = id;
+			this.similarity = similarity;
+		}
+
+		/**
+		 * @return the id the trace was added with
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * @return the estimated similarity, between 0 and 1
+		 */
+		public double getSimilarity() {
+			return similarity;
+		}
+	}
+
+	/**
+	 * The buckets of one band: an open addressing hash table from the key of a bucket to
+	 * the trace added last to it. The other traces in the bucket are chained through {@link #next}.
+	 */
+	private static final class Band {
+		long[] keys = new long[16];
+		/** The trace added last to each bucket plus one, 0 for a free slot */
+		int[] heads = new int[16];
+		int used;
+
+		int head(long key) {
+			for (int slot = slot(key, keys.length); heads[slot] != 0; slot = (slot + 1) & (keys.length - 1)) {
+				if (keys[slot] == key)
+					return heads[slot];
+			}
+			return 0;
+		}
+
+		/**
+		 * @return the trace that was added to the bucket before, plus one, or 0 if it was empty
+		 */
+		int push(long key, int trace) {
+			if (2 * (used + 1) > keys.length)
+				grow();
+			int slot = slot(key, keys.length);
+			while (heads[slot] != 0 && keys[slot] != key)
+				slot = (slot + 1) & (keys.length - 1);
+			int previous = heads[slot];
+			if (previous == 0)
+				used++;
+			keys[slot] = key;
+			heads[slot] = trace + 1;
+			return previous;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldHeads = heads;
+			keys = new long[2 * oldKeys.length];
+			heads = new int[2 * oldKeys.length];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldHeads[i] == 0)
+					continue;
+				int slot = slot(oldKeys[i], keys.length);
+				while (heads[slot] != 0)
+					slot = (slot + 1) & (keys.length - 1);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+
+		private static int slot(long key, int length) {
+			return (int) (key ^ (key >>> 32)) & (length - 1);
+		}
+	}
+
+	private final int bands;
+	private final int rows;
+	private final long[] seeds;
+	private final Band[] buckets;
+
+	/** For every trace, the id it was added with */
+	private int[] ids;
+
+	/** For every trace, its MinHash values, bands times rows of them */
+	private int[] signatures;
+
+	/** For every trace and band, the trace added to the same bucket before it, plus one */
+	private int[] next;
+
+	private int size;
+
+	/**
+	 * Create an index with {@link #DEFAULT_BANDS} bands of {@link #DEFAULT_ROWS} values.
+	 */
+	public TraceSimilarityIndex() {
+		this(DEFAULT_BANDS, DEFAULT_ROWS);
+	}
+
+	/**
+	 * Create an index. More bands find traces that are less similar, more rows keep the buckets smaller.
+	 * @param bands how many bands to split the values of a trace into
+	 * @param rows how many values each band has
+	 */
+	public TraceSimilarityIndex(int bands, int rows) {
+		if (bands < 1 || rows < 1)
+			throw new IllegalArgumentException("An index needs at least one band of one row, not " + bands + " of " + rows);
+		this.bands = bands;
+		this.rows = rows;
+		this.seeds = new long[bands * rows];
+		long seed = 0x5DEECE66DL;
+		for (int i = 0; i < seeds.length; i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			seeds[i] = mix(seed);
+		}
+		this.buckets = new Band[bands];
+		for (int i = 0; i < bands; i++)
+			buckets[i] = new Band();
+		this.ids = new int[16];
+		this.signatures = new int[16 * seeds.length];
+		this.next = new int[16 * bands];
+		this.size = 0;
+	}
+
+	/**
+	 * Add a Java stack trace.
+	 * @param id an id to find the trace by, such as the id of its bug report
+	 * @param trace the trace
+	 * @return false if the trace has no frames and was left out
+	 */
+	public boolean add(int id, StackTrace trace) {
+		return add(id, framesOf(trace));
+	}
+
+	/**
+	 * Add a Talkback trace.
+	 * @param id an id to find the trace by, such as the id of its bug report
+	 * @param trace the trace
+	 * @return false if the trace has no entries and was left out
+	 */
+	public boolean add(int id, TalkbackTrace trace) {
+		return add(id, framesOf(trace));
+	}
+
+	/**
+	 * Add a trace.
+	 * @param id an id to find the trace by, such as the id of its bug report
+	 * @param frames the frames of the trace, the topmost first, without their locations
+	 * @return false if there are no frames and the trace was left out
+	 */
+	public boolean add(int id, List<String> frames) {
+		int[] signature = signature(frames);
+		if (signature == null)
+			return false;
+		synchronized (this) {
+			if (size == ids.length)
+				grow();
+			ids[size] = id;
+			System.arraycopy(signature, 0, signatures, size * seeds.length, seeds.length);
+			for (int band = 0; band < bands; band++)
+				next[size * bands + band] = buckets[band].push(bandKey(signature, band), size);
+			size++;
+		}
+		return true;
+	}
+
+	/**
+	 * Make room for twice as many traces, as far as the arrays of their values can hold them.
+	 */
+	private void grow() {
+		int capacity = (int) Math.min(2L * ids.length, MAX_ARRAY_LENGTH / seeds.length);
+		if (capacity <= size)
+			throw new IllegalStateException("The index cannot hold more than " + size + " traces");
+		ids = Arrays.copyOf(ids, capacity);
+		signatures = Arrays.copyOf(signatures, capacity * seeds.length);
+		next = Arrays.copyOf(next, capacity * bands);
+	}
+
+	/**
+	 * Find the traces most similar to a Java stack trace.
+	 * @param trace the trace
+	 * @param k how many traces to find at most
+	 * @return the traces, the most similar first
+	 */
+	public List<Match> findSimilar(StackTrace trace, int k) {
+		return findSimilar(framesOf(trace), k);
+	}
+
+	/**
+	 * Find the traces most similar to a Talkback trace.
+	 * @param trace the trace
+	 * @param k how many traces to find at most
+	 * @return the traces, the most similar first
+	 */
+	public List<Match> findSimilar(TalkbackTrace trace, int k) {
+		return findSimilar(framesOf(trace), k);
+	}
+
+	/**
+	 * Find the traces most similar to a trace.
+	 * @param frames the frames of the trace, the topmost first, without their locations
+	 * @param k how many traces to find at most
+	 * @return the traces, the most similar first
+	 */
+	public List<Match> findSimilar(List<String> frames, int k) {
+		int[] signature = signature(frames);
+		if (signature == null || k < 1)
+			return new ArrayList<Match>();
+
+		PriorityQueue<Match> best = new PriorityQueue<Match>(k + 1, BY_SIMILARITY);
+		synchronized (this) {
+			// The traces in the buckets of the query, where a trace in more than one of them shows up more than once
+			int[] candidates = new int[16];
+			int count = 0;
+			for (int band = 0; band < bands; band++) {
+				int taken = 0;
+				for (int trace = buckets[band].head(bandKey(signature, band)) - 1; trace >= 0 && taken < MAX_BUCKET_CANDIDATES;
+						trace = next[trace * bands + band] - 1) {
+					if (count == candidates.length)
+						candidates = Arrays.copyOf(candidates, 2 * count);
+					candidates[count++] = trace;
+					taken++;
+				}
+			}
+			Arrays.sort(candidates, 0, count);
+			for (int i = 0; i < count; i++) {
+				if (i > 0 && candidates[i] == candidates[i - 1])
+					continue;
+				best.add(new Match(ids[candidates[i]], similarity(signature, candidates[i])));
+				if (best.size() > k)
+					best.poll();
+			}
+		}
+		List<Match> matches = new ArrayList<Match>(best);
+		Collections.sort(matches, Collections.reverseOrder(BY_SIMILARITY));
+		return matches;
+	}
+
+	private static final Comparator<Match> BY_SIMILARITY = new Comparator<Match>() {
+		public int compare(Match a, Match b) {
+			return Double.compare(a.getSimilarity(), b.getSimilarity());
+		}
+	};
+
+	/**
+	 * @return how many traces the index holds
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private double similarity(int[] signature, int trace) {
+		int same = 0;
+		int offset = trace * seeds.length;
+		for (int i = 0; i < seeds.length; i++) {
+			if (signatures[offset + i] == signature[i])
+				same++;
+		}
+		return (double) same / seeds.length;
+	}
+
+	/**
+	 * The frames of a Java trace without their locations, so that traces from other versions
+	 * with other line numbers are the same.
+	 */
+	private static List<String> framesOf(StackTrace trace) {
+		List<String> frames = new ArrayList<String>();
+		for (String frame : trace.getFrames()) {
+			int open = frame.indexOf('(');
+			frames.add(((open >= 0) ? frame.substring(0, open) : frame).trim());
+		}
+		return frames;
+	}
+
+	private static List<String> framesOf(TalkbackTrace trace) {
+		List<String> frames = new ArrayList<String>();
+		for (TalkbackEntry entry : trace.getEntries())
+			frames.add(entry.getName());
+		return frames;
+	}
+
+	/**
+	 * The MinHash values of the pairs of adjacent frames, or of the only frame, null for no frames
+	 */
+	private int[] signature(List<String> frames) {
+		if (frames.isEmpty())
+			return null;
+		long[] min = new long[seeds.length];
+		Arrays.fill(min, Long.MAX_VALUE);
+		int shingles = Math.max(frames.size() - 1, 1);
+		for (int i = 0; i < shingles; i++) {
+			long first = frames.get(i).hashCode();
+			long second = (i + 1 < frames.size()) ? frames.get(i + 1).hashCode() : 0;
+			long shingle = mix((first << 32) | (second & 0xFFFFFFFFL));
+			for (int h = 0; h < seeds.length; h++)
+				min[h] = Math.min(min[h], mix(shingle ^ seeds[h]));
+		}
+		int[] signature = new int[seeds.length];
+		for (int h = 0; h < seeds.length; h++)
+			signature[h] = (int) (min[h] >>> 32);
+		return signature;
+	}
+
+	private long bandKey(int[] signature, int band) {
+		long key = band;
+		for (int row = band * rows; row < (band + 1) * rows; row++)
+			key = mix(key * 0x9E3779B97F4A7C15L + signature[row]);
+		return key;
+	}
+
+	/**
+	 * The finalizer of SplitMix64, which spreads every bit of the input over the output
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -12,6 +12,9 @@ import java.util.regex.Pattern;
 import io.kuy.infozilla.helpers.RegExHelper;
 
 public class Patch {
+	/** A "---" or "+++" line, with the file name as its second group */
+	private static final Pattern pattern_file_line = Pattern.compile("([-]{3}|[+]{3})([ \\r\\n\\t](.*?)[ \\t])", Pattern.MULTILINE);
+	
 	private String index = "";
 	private String originalFile = "";
 	private String modifiedFile = "";
@@ -55,8 +58,7 @@ public class Patch {
 
 	public String PlusMinusLineToFilename(String input) {
 		String temp = input;
-		String pmreg = "([-]{3}|[+]{3})([ \\r\\n\\t](.*?)[ \\t])";
-		for (MatchResult r : RegExHelper.findMatches(Pattern.compile(pmreg, Pattern.MULTILINE ), input)) {
+		for (MatchResult r : RegExHelper.findMatches(pattern_file_line, input)) {
 			if (r.groupCount() > 1)
 				temp = r.group(2).trim();
 		}
@@ -0,0 +1,210 @@
+/**
+ * StackFrame.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.elements.stacktrace.java;
+
+import io.kuy.infozilla.helpers.SymbolTable;
+
+/**
+ * Class representing a single frame of a Java Stack Trace, such as
+ * <code>org.eclipse.core.internal.resources.Resource.checkLocal(Resource.java:313)</code>,
+ * split into its package, class, method, file and line number.
+ * <p>
+ * Frames are immutable and take their names from a {@link SymbolTable}, so a name that
+ * appears in many frames is kept in memory once. A frame still reads as the text it
+ * was found as: a frame that does not look like the usual form, such as one in a
+ * <code>(Native Method)</code> or with blanks in it, keeps that text along.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class StackFrame {
+
+	private final String packageName;
+	private final String className;
+	private final String methodName;
+	private final String fileName;
+	private final int lineNumber;
+
+	/** The text of the frame, if it is not the same as put together from the parts, otherwise null */
+	private final String text;
+
+	private StackFrame(String packageName, String className, String methodName, String fileName, int lineNumber, String text) {
+		this.packageName = packageName;
+		this.className = className;
+		this.methodName = methodName;
+		this.fileName = fileName;
+		this.lineNumber = lineNumber;
+		this.text = text;
+	}
+
+	/**
+	 * Parse a frame, using the default {@link SymbolTable}.
+	 * @param frame the text of the frame without the preceeding "at". Line breaks in it are left out.
+	 * @return the frame
+	 */
+	public static StackFrame parse(CharSequence frame) {
+		return parse(frame, SymbolTable.getDefault());
+	}
+
+	/**
+	 * Parse a frame.
+	 * @param frame the text of the frame without the preceeding "at". Line breaks in it are left out.
+	 * @param symbols the table to take the names from
+	 * @return the frame
+	 */
+	public static StackFrame parse(CharSequence frame, SymbolTable symbols) {
+		String s = withoutLineBreaks(frame);
+
+		// some.package.Class.method(Location)
+		int open = s.indexOf('(');
+		int close = s.lastIndexOf(')');
+		String name = (open >= 0 && close > open) ? s.substring(0, open) : s;
+
+		int methodDot = name.lastIndexOf('.');
+		String methodName = name.substring(methodDot + 1);
+		String qualifiedClass = (methodDot >= 0) ? name.substring(0, methodDot) : "";
+		int classDot = qualifiedClass.lastIndexOf('.');
+		String className = qualifiedClass.substring(classDot + 1);
+		String packageName = (classDot >= 0) ? qualifiedClass.substring(0, classDot) : "";
+
+		// File.java:42, File.java, or something else like Native Method
+		String fileName = null;
+		int lineNumber = -1;
+		if (open >= 0 && close > open) {
+			String location = s.substring(open + 1, close);
+			int colon = location.lastIndexOf(':');
+			if (colon >= 0 && isNumber(location, colon + 1)) {
+				fileName = location.substring(0, colon);
+				lineNumber = Integer.parseInt(location.substring(colon + 1));
+			} else if (location.endsWith(".java")) {
+				fileName = location;
+			}
+		}
+
+		String formatted = format(packageName, className, methodName, fileName, lineNumber);
+		// The line number and the text of an unusual frame hardly ever repeat, so only the names are shared
+		return new StackFrame(symbols.intern(packageName), symbols.intern(className),
+				symbols.intern(methodName), symbols.intern(fileName), lineNumber,
+				formatted.equals(s) ? null : s);
+	}
+
+	private static String withoutLineBreaks(CharSequence frame) {
+		StringBuilder s = null;
+		for (int i = 0; i < frame.length(); i++) {
+			char c = frame.charAt(i);
+			if (c == '\n' || c == '\r') {
+				if (s == null)
+					s = new StringBuilder(frame.length()).append(frame, 0, i);
+			} else if (s != null) {
+				s.append(c);
+			}
+		}
+		return (s != null) ? s.toString() : frame.toString();
+	}
+
+	/**
+	 * A line number that fits into an int, up to the end of the text
+	 */
+	private static boolean isNumber(String s, int start) {
+		if (start == s.length() || s.length() - start > 9)
+			return false;
+		for (int i = start; i < s.length(); i++) {
+			if (s.charAt(i) < '0' || s.charAt(i) > '9')
+				return false;
+		}
+		return true;
+	}
+
+	private static String format(String packageName, String className, String methodName, String fileName, int lineNumber) {
+		StringBuilder s = new StringBuilder();
+		if (packageName.length() > 0)
+			s.append(packageName).append('.');
+		if (className.length() > 0)
+			s.append(className).append('.');
+		s.append(methodName).append('(');
+		if (fileName != null)
+			s.append(fileName);
+		if (lineNumber >= 0)
+			s.append(':').append(lineNumber);
+		return s.append(')').toString();
+	}
+
+	/**
+	 * @return the package of the class, such as org.eclipse.core.runtime, or "" for none
+	 */
+	public String getPackageName() {
+		return packageName;
+	}
+
+	/**
+	 * @return the name of the class without its package, such as Platform or Worker$1
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the name of the class with its package
+	 */
+	public String getQualifiedClassName() {
+		if (packageName.length() == 0)
+			return className;
+		return packageName + "." + className;
+	}
+
+	/**
+	 * @return the name of the method, such as run or &lt;init&gt;
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * @return the source file, such as Platform.java, or null if the frame does not name one
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return the line number, or -1 if the frame does not give one
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return the frame as it was found, without the preceeding "at"
+	 */
+	public String toString() {
+		if (text != null)
+			return text;
+		return format(packageName, className, methodName, fileName, lineNumber);
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof StackFrame))
+			return false;
+		StackFrame other = (StackFrame) obj;
+		return lineNumber == other.lineNumber && packageName.equals(other.packageName)
+				&& className.equals(other.className) && methodName.equals(other.methodName)
+				&& equal(fileName, other.fileName) && equal(text, other.text);
+	}
+
+	private static boolean equal(String a, String b) {
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	public int hashCode() {
+		int hash = packageName.hashCode();
+		hash = 31 * hash + className.hashCode();
+		hash = 31 * hash + methodName.hashCode();
+		hash = 31 * hash + ((fileName != null) ? fileName.hashCode() : 0);
+		hash = 31 * hash + lineNumber;
+		return 31 * hash + ((text != null) ? text.hashCode() : 0);
+	}
+
+}
@@ -4,19 +4,29 @@
  */
 package io.kuy.infozilla.elements.stacktrace.java;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import io.kuy.infozilla.helpers.SymbolTable;
+
 /**
  * Class representing a Stack Trace (in Java 1.4, 1.5, 1.6)
+ * <p>
+ * The frames are kept as {@link StackFrame}s, which traces share with each other,
+ * and {@link #getFrames()} still reads them as text.
  * @author Nicolas Bettenburg
  */
 public class StackTrace {
 
 	private String exception;
 	private String reason;
-	private List<String> frames;
+	private StackFrame[] frames;
 	private boolean isCause;
+	private StackTrace parent;
+	private int commonFrames;
+	private TraceFingerprint fingerprint;
 	private int traceStart;
 	private int traceEnd;
 	
@@ -44,7 +54,7 @@ public class StackTrace {
 		this.traceEnd = 0;
 		this.exception = "Not specified";
 		this.reason = "No reason given";
-		this.frames = new ArrayList<String>();
+		this.frames = new StackFrame[0];
 		this.isCause = false;
 	}
 	
@@ -57,9 +67,26 @@ public class StackTrace {
 	public StackTrace(String exception, String reason, List<String> frames) {
 		this.traceStart = 0;
 		this.traceEnd = 0;
-		this.exception = exception;
+		this.exception = SymbolTable.getDefault().intern(exception);
+		this.reason = reason;
+		this.frames = new StackFrame[frames.size()];
+		for (int i = 0; i < this.frames.length; i++)
+			this.frames[i] = StackFrame.parse(frames.get(i));
+		this.isCause = false;
+	}
+	
+	/**
+	 * Overloaded Constructor
+	 * @param exception The Exception resulting in this Stack Trace.
+	 * @param reason The Reason given in the Exception.
+	 * @param frames The parsed locations the trace originated from.
+	 */
+	public StackTrace(String exception, String reason, StackFrame[] frames) {
+		this.traceStart = 0;
+		this.traceEnd = 0;
+		this.exception = SymbolTable.getDefault().intern(exception);
 		this.reason = reason;
-		this.frames = frames;
+		this.frames = frames.clone();
 		this.isCause = false;
 	}
 	
@@ -72,9 +99,9 @@ public class StackTrace {
 	public StackTrace(String exception, String reason) {
 		this.traceStart = 0;
 		this.traceEnd = 0;
-		this.exception = exception;
+		this.exception = SymbolTable.getDefault().intern(exception);
 		this.reason = reason;
-		this.frames = new ArrayList<String>();
+		this.frames = new StackFrame[0];
 		this.isCause = false;
 	}
 
@@ -99,10 +126,27 @@ public class StackTrace {
 
 	/**
 	 * Getter for the Trace Locations
-	 * @return A list of locations where the trace originated from.
+	 * @return A list of locations where the trace originated from, as they were found.
+	 * 		The list cannot be changed.
 	 */
 	public List<String> getFrames() {
-		return(frames);
+		return new AbstractList<String>() {
+			public String get(int index) {
+				return frames[index].toString();
+			}
+			
+			public int size() {
+				return frames.length;
+			}
+		};
+	}
+	
+	/**
+	 * Getter for the parsed Trace Locations
+	 * @return A list of the frames of this trace, which cannot be changed.
+	 */
+	public List<StackFrame> getStackFrames() {
+		return Collections.unmodifiableList(Arrays.asList(frames));
 	}
 	
 	/**
@@ -121,13 +165,86 @@ public class StackTrace {
 		return isCause;
 	}
 	
+	/**
+	 * Set the trace this cause was printed under
+	 * @param parent the enclosing trace or cause, or null
+	 */
+	public void setParent(StackTrace parent) {
+		this.parent = parent;
+		this.fingerprint = null;
+	}
+	
+	/**
+	 * Get the trace this cause was printed under
+	 * @return the enclosing trace or cause, or null if there is none or it was not found
+	 */
+	public StackTrace getParent() {
+		return parent;
+	}
+	
+	/**
+	 * Set how many frames were left out with "... N more"
+	 * @param commonFrames N, the number of frames at the end that are the same as in the enclosing trace
+	 */
+	public void setCommonFrames(int commonFrames) {
+		this.commonFrames = commonFrames;
+		this.fingerprint = null;
+	}
+	
+	/**
+	 * Get how many frames were left out with "... N more"
+	 * @return N, the number of frames at the end that are the same as in the enclosing trace, 0 if none were left out
+	 */
+	public int getCommonFrames() {
+		return commonFrames;
+	}
+	
+	/**
+	 * Get all frames of this trace, the ones left out with "... N more" included. These are
+	 * taken from the enclosing trace rather than copied, as far as it is known and has them.
+	 * @return A list of the frames, which cannot be changed.
+	 */
+	public List<StackFrame> getAllStackFrames() {
+		if (parent == null || commonFrames == 0)
+			return getStackFrames();
+		final List<StackFrame> parentFrames = parent.getAllStackFrames();
+		final int common = Math.min(commonFrames, parentFrames.size());
+		return new AbstractList<StackFrame>() {
+			public StackFrame get(int index) {
+				if (index < frames.length)
+					return frames[index];
+				if (index >= size())
+					throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+				return parentFrames.get(parentFrames.size() - common + index - frames.length);
+			}
+			
+			public int size() {
+				return frames.length + common;
+			}
+		};
+	}
+	
+	/**
+	 * Get the fingerprint of this trace, which is the same for all traces of the same crash
+	 * @return the {@link TraceFingerprint} of the exception and the topmost frames
+	 */
+	public TraceFingerprint getFingerprint() {
+		if (fingerprint != null)
+			return fingerprint;
+		TraceFingerprint taken = TraceFingerprint.of(this);
+		// Frames taken from the enclosing traces change with their own parents, so only keep what this trace decides alone
+		if (parent == null || commonFrames == 0 || frames.length >= TraceFingerprint.DEFAULT_DEPTH)
+			fingerprint = taken;
+		return taken;
+	}
+	
 	/**
 	 * Joins the text of all Frames in frames
 	 * @return a single String with all frames concattenated
 	 */
 	public String getFramesText() {
 		String framesText = "";
-		for (String frame : frames) {
+		for (StackFrame frame : frames) {
 			framesText = framesText + "at " + frame + System.getProperty("line.separator");
 		}
 		return framesText;
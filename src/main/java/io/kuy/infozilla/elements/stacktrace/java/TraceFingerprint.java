@@ -0,0 +1,225 @@
+/**
+ * TraceFingerprint.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.elements.stacktrace.java;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * A fingerprint of a Java Stack Trace that stays the same for the same crash, across reports
+ * and versions of the software: the exception and the methods of the topmost frames. Line
+ * numbers and files are left out, and so are the numbers the compiler and the JVM make up for
+ * generated code, such as those of anonymous classes (<code>Worker$1</code>), lambdas
+ * (<code>lambda$run$0</code>, <code>Worker$$Lambda$14/0x0000000800c03000</code>), proxies
+ * (<code>$Proxy12</code>), reflection accessors (<code>GeneratedMethodAccessor42</code>)
+ * and byte code enhancers (<code>Service$$EnhancerBySpringCGLIB$$8f4e3a1b</code>).
+ * <p>
+ * The normalized text is hashed into a 128 bit key, whose upper half serves as a 64 bit key.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class TraceFingerprint {
+
+	/** How many of the topmost frames are part of a fingerprint, unless asked for otherwise */
+	public static final int DEFAULT_DEPTH = 5;
+
+	private final String signature;
+	private final long high;
+	private final long low;
+
+	private TraceFingerprint(String signature, long high, long low) {
+		this.signature = signature;
+		this.high = high;
+		this.low = low;
+	}
+
+	/**
+	 * Take the fingerprint of a trace, from its {@link #DEFAULT_DEPTH} topmost frames.
+	 * @param trace the trace
+	 * @return the fingerprint
+	 */
+	public static TraceFingerprint of(StackTrace trace) {
+		return of(trace, DEFAULT_DEPTH);
+	}
+
+	/**
+	 * Take the fingerprint of a trace.
+	 * @param trace the trace
+	 * @param depth how many of the topmost frames to take into account
+	 * @return the fingerprint
+	 */
+	public static TraceFingerprint of(StackTrace trace, int depth) {
+		StringBuilder signature = new StringBuilder(normalize(trace.getException()));
+		List<StackFrame> frames = trace.getAllStackFrames();
+		for (int i = 0; i < frames.size() && i < depth; i++) {
+			StackFrame frame = frames.get(i);
+			signature.append('\n');
+			if (frame.getPackageName().length() > 0)
+				signature.append(normalize(frame.getPackageName())).append('.');
+			signature.append(normalize(frame.getClassName())).append('.').append(normalize(frame.getMethodName()));
+		}
+		return fromSignature(signature.toString());
+	}
+
+	/**
+	 * Hash a normalized signature, as given by {@link #getSignature()}.
+	 * @param signature the signature
+	 * @return the fingerprint
+	 */
+	public static TraceFingerprint fromSignature(String signature) {
+		byte[] digest = md5().digest(signature.getBytes(StandardCharsets.UTF_8));
+		return new TraceFingerprint(signature, toLong(digest, 0), toLong(digest, 8));
+	}
+
+	/**
+	 * Get the fingerprint with a given key, such as one read back from a {@link #toHex()}.
+	 * @param high the upper 64 bits of the 128 bit key
+	 * @param low the lower 64 bits of the 128 bit key
+	 * @return a fingerprint without a signature
+	 */
+	public static TraceFingerprint fromKey(long high, long low) {
+		return new TraceFingerprint(null, high, low);
+	}
+
+	private static MessageDigest md5() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has to support MD5
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long toLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = offset; i < offset + 8; i++)
+			value = (value << 8) | (bytes[i] & 0xFF);
+		return value;
+	}
+
+	/**
+	 * Leave the made up parts out of a name: everything after a '/', parts between '$' that are
+	 * numbers or hashes, and the numbers at the end of proxies and generated accessors.
+	 */
+	static String normalize(String name) {
+		int slash = name.indexOf('/');
+		if (slash >= 0)
+			name = name.substring(0, slash);
+		if (name.indexOf('$') < 0 && !name.startsWith("Generated"))
+			return name;
+
+		StringBuilder normalized = new StringBuilder(name.length());
+		int start = 0;
+		while (start <= name.length()) {
+			int end = name.indexOf('$', start);
+			if (end < 0)
+				end = name.length();
+			String part = name.substring(start, end);
+			if (!isNumber(part) && !isHash(part)) {
+				String stripped = withoutTrailingDigits(part);
+				if (stripped.equals("Proxy") || (stripped.startsWith("Generated") && stripped.endsWith("Accessor")))
+					part = stripped;
+				normalized.append(part);
+			}
+			if (end < name.length())
+				normalized.append('$');
+			start = end + 1;
+		}
+		return normalized.toString();
+	}
+
+	private static boolean isNumber(String part) {
+		if (part.length() == 0)
+			return false;
+		for (int i = 0; i < part.length(); i++) {
+			if (part.charAt(i) < '0' || part.charAt(i) > '9')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Six or more lowercase hexadecimal digits, at least one of them a number, like a class generator would use them
+	 */
+	private static boolean isHash(String part) {
+		if (part.length() < 6)
+			return false;
+		boolean digit = false;
+		for (int i = 0; i < part.length(); i++) {
+			char c = part.charAt(i);
+			if (c >= '0' && c <= '9')
+				digit = true;
+			else if (c < 'a' || c > 'f')
+				return false;
+		}
+		return digit;
+	}
+
+	private static String withoutTrailingDigits(String part) {
+		int end = part.length();
+		while (end > 0 && part.charAt(end - 1) >= '0' && part.charAt(end - 1) <= '9')
+			end--;
+		return part.substring(0, end);
+	}
+
+	/**
+	 * @return the normalized exception and frames the fingerprint was hashed from, one per line,
+	 * 		or null if the fingerprint was made from its key
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+	/**
+	 * @return the 64 bit key of the fingerprint
+	 */
+	public long getKey() {
+		return high;
+	}
+
+	/**
+	 * @return the upper 64 bits of the 128 bit key
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return the lower 64 bits of the 128 bit key
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	/**
+	 * @return the 128 bit key as 32 hexadecimal digits
+	 */
+	public String toHex() {
+		return String.format("%016x%016x", high, low);
+	}
+
+	public String toString() {
+		return toHex();
+	}
+
+	/**
+	 * Fingerprints are equal if their 128 bit keys are
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof TraceFingerprint))
+			return false;
+		TraceFingerprint other = (TraceFingerprint) obj;
+		return high == other.high && low == other.low;
+	}
+
+	public int hashCode() {
+		return (int) (high ^ (high >>> 32));
+	}
+
+}
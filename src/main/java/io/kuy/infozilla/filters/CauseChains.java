@@ -0,0 +1,131 @@
+/**
+ * CauseChains.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+
+/**
+ * Links every <code>Caused by:</code> trace to the trace it was printed under, and reads the
+ * <code>... N more</code> line the JVM prints instead of the frames a cause has in common with
+ * that trace. The common frames are not copied, a cause reaches them through
+ * {@link StackTrace#getParent()}. The {@link JavaStackTraceLexer} links the causes itself while
+ * it finds them, in the same way, and reads the <code>... N more</code> lines with {@link #parseMore}.
+ * @author Nicolas Bettenburg
+ *
+ */
+final class CauseChains {
+
+	private CauseChains() {
+	}
+
+	/**
+	 * Link the causes among a list of traces found in a text.
+	 * @param traces the traces, in any order, with their spans in the text
+	 * @param text the text the traces were found in
+	 */
+	static void link(List<StackTrace> traces, CharSequence text) {
+		List<StackTrace> inOrder = new ArrayList<StackTrace>(traces);
+		Collections.sort(inOrder, new Comparator<StackTrace>() {
+			public int compare(StackTrace a, StackTrace b) {
+				return Integer.compare(a.getTraceStart(), b.getTraceStart());
+			}
+		});
+
+		StackTrace previous = null;
+		for (StackTrace trace : inOrder) {
+			if (trace.isCause()) {
+				// A "... N more" line may follow the span, unless the span took it along already
+				if (trace.getCommonFrames() == 0)
+					trace.setCommonFrames(moreFrames(text, trace.getTraceEnd()));
+				if (previous != null && isBetween(text, previous.getTraceEnd(), trace.getTraceStart()))
+					trace.setParent(previous);
+			}
+			previous = trace;
+		}
+	}
+
+	/**
+	 * Read a <code>... N more</code> line that starts at a position or on the line after it.
+	 * @param text the text to look in
+	 * @param from the position to start at
+	 * @return N, or 0 if there is no such line
+	 */
+	static int moreFrames(CharSequence text, int from) {
+		int i = skipBlanks(text, from, text.length());
+		if (i < text.length() && text.charAt(i) == '\n')
+			i = skipBlanks(text, i + 1, text.length());
+		int end = i;
+		while (end < text.length() && text.charAt(end) != '\n')
+			end++;
+		return Math.max(parseMore(text, i, end), 0);
+	}
+
+	/**
+	 * Parse <code>... N more</code> between two positions, with nothing else around it but blanks.
+	 * @return N, 0 if N is too large to count on, or -1 if the text is something else
+	 */
+	static int parseMore(CharSequence text, int start, int end) {
+		int i = skipBlanks(text, start, end);
+		if (!startsWith(text, i, end, "..."))
+			return -1;
+		int number = skipBlanks(text, i + 3, end);
+		int numberEnd = number;
+		while (numberEnd < end && text.charAt(numberEnd) >= '0' && text.charAt(numberEnd) <= '9')
+			numberEnd++;
+		int more = skipBlanks(text, numberEnd, end);
+		if (numberEnd == number || more == numberEnd || !startsWith(text, more, end, "more")
+				|| skipBlanks(text, more + 4, end) != end)
+			return -1;
+		if (numberEnd - number > 9)
+			return 0;
+		return Integer.parseInt(text.subSequence(number, numberEnd).toString());
+	}
+
+	/**
+	 * Whether a cause starting at one position was printed right under a trace ending at another,
+	 * with nothing between them but line breaks and the <code>... N more</code> line of the trace.
+	 */
+	private static boolean isBetween(CharSequence text, int traceEnd, int causeStart) {
+		if (traceEnd > causeStart)
+			return false;
+		int i = traceEnd;
+		while (i < causeStart) {
+			char c = text.charAt(i);
+			if (c == ' ' || c == '\t' || c == '\n') {
+				i++;
+			} else {
+				int end = i;
+				while (end < causeStart && text.charAt(end) != '\n')
+					end++;
+				if (parseMore(text, i, end) < 0)
+					return false;
+				i = end;
+			}
+		}
+		return true;
+	}
+
+	private static int skipBlanks(CharSequence text, int from, int end) {
+		while (from < end && (text.charAt(from) == ' ' || text.charAt(from) == '\t'))
+			from++;
+		return from;
+	}
+
+	private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+		if (end - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text.charAt(start + i) != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -37,20 +37,20 @@ public class FilterChainEclipse implements FilterChain {
 	public FilterChainEclipse(String inputText) {
 		patchFilter = new FilterPatches();
 		stacktraceFilter = new FilterStackTraceJAVA();
-		sourcecodeFilter = new FilterSourceCodeJAVA(FilterChainEclipse.class.getResource("/Java_CodeDB.txt"));
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
 		enumFilter = new FilterEnumeration();
 		
 		this.inputText = RegExHelper.makeLinuxNewlines(inputText);
 		this.outputText = this.inputText;
 		
 		patches = patchFilter.runFilter(outputText);
-		outputText = patchFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterPatches", outputText, patchFilter.getOutputText());
 		
 		traces = stacktraceFilter.runFilter(outputText);
-		outputText = stacktraceFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput(stacktraceFilter.getStageName(), outputText, stacktraceFilter.getOutputText());
 		 
 		regions = sourcecodeFilter.runFilter(outputText);
-		outputText = sourcecodeFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterSourceCodeJAVA", outputText, sourcecodeFilter.getOutputText());
 		 
 		enumerations = enumFilter.runFilter(outputText);
 		// The output of the filter chain
@@ -60,7 +60,7 @@ public class FilterChainEclipse implements FilterChain {
 	public FilterChainEclipse(String inputText, boolean runPatches, boolean runTraces, boolean runSource, boolean runEnums) {
 		patchFilter = new FilterPatches();
 		stacktraceFilter = new FilterStackTraceJAVA();
-		sourcecodeFilter = new FilterSourceCodeJAVA(FilterChainEclipse.class.getResource("/Java_CodeDB.txt"));
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
 		enumFilter = new FilterEnumeration();
 		
 		
@@ -71,19 +71,19 @@ public class FilterChainEclipse implements FilterChain {
 			patches = patchFilter.runFilter(outputText);
 		} else patches = new ArrayList<Patch>();
 		
-		outputText = patchFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterPatches", outputText, patchFilter.getOutputText());
 		
 		if (runTraces) {
 			traces = stacktraceFilter.runFilter(outputText);
 		} else traces = new ArrayList<StackTrace>();
 		
-		outputText = stacktraceFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput(stacktraceFilter.getStageName(), outputText, stacktraceFilter.getOutputText());
 		
 		if (runSource) {
 			regions = sourcecodeFilter.runFilter(outputText);
 		} else regions = new ArrayList<CodeRegion>();
 		
-		outputText = sourcecodeFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterSourceCodeJAVA", outputText, sourcecodeFilter.getOutputText());
 		 
 		if (runEnums) {
 			enumerations = enumFilter.runFilter(outputText);
@@ -37,17 +37,17 @@ public class FilterChainEclipsePS implements FilterChain {
 	public FilterChainEclipsePS(String inputText) {
 		patchFilter = new FilterPatches();
 		stacktraceFilter = new FilterStackTraceJAVA();
-		sourcecodeFilter = new FilterSourceCodeJAVA(FilterChainEclipsePS.class.getResource("/Java_CodeDB.txt"));
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
 		enumFilter = new FilterEnumeration();
 		
 		this.inputText = RegExHelper.makeLinuxNewlines(inputText);
 		this.outputText = this.inputText;
 		
 		patches = patchFilter.runFilter(outputText);
-		outputText = patchFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterPatches", outputText, patchFilter.getOutputText());
 					
 		traces = stacktraceFilter.runFilter(outputText);
-		outputText = stacktraceFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput(stacktraceFilter.getStageName(), outputText, stacktraceFilter.getOutputText());
 		 
 		regions = new ArrayList<CodeRegion>();
 		enumerations = new ArrayList<Enumeration>();
@@ -56,7 +56,7 @@ public class FilterChainEclipsePS implements FilterChain {
 	public FilterChainEclipsePS(String inputText, boolean runPatches, boolean runTraces, boolean runSource, boolean runEnums) {
 		patchFilter = new FilterPatches();
 		stacktraceFilter = new FilterStackTraceJAVA();
-		sourcecodeFilter = new FilterSourceCodeJAVA(FilterChainEclipsePS.class.getResource("/Java_CodeDB.txt"));
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
 		enumFilter = new FilterEnumeration();
 		
 		this.inputText = RegExHelper.makeLinuxNewlines(inputText);
@@ -65,16 +65,16 @@ public class FilterChainEclipsePS implements FilterChain {
 		if (runPatches) patches = patchFilter.runFilter(outputText);
 		else patches = new ArrayList<Patch>();
 		
-		outputText = patchFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterPatches", outputText, patchFilter.getOutputText());
 					
 		if (runTraces) traces = stacktraceFilter.runFilter(outputText);
 		else traces = new ArrayList<StackTrace>();
 		
-		outputText = stacktraceFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput(stacktraceFilter.getStageName(), outputText, stacktraceFilter.getOutputText());
 		 
 		if (runSource) {
 			regions = sourcecodeFilter.runFilter(outputText);
-			outputText = sourcecodeFilter.getOutputText();
+			outputText = FilterStatistics.getDefault().recordOutput("FilterSourceCodeJAVA", outputText, sourcecodeFilter.getOutputText());
 		}
 		else regions = new ArrayList<CodeRegion>();
 		 
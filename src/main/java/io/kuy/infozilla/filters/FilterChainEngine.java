@@ -0,0 +1,265 @@
+/**
+ * FilterChainEngine.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.kuy.infozilla.elements.enumeration.Enumeration;
+import io.kuy.infozilla.elements.patch.Patch;
+import io.kuy.infozilla.elements.sourcecode.java.CodeRegion;
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackTrace;
+import io.kuy.infozilla.helpers.MappedText;
+import io.kuy.infozilla.helpers.RegExHelper;
+import io.kuy.infozilla.helpers.RegexBudget;
+
+/**
+ * A reusable filter chain. Unlike the {@link FilterChain} implementations, which run once
+ * on the text given to their constructor, an engine is configured and compiled once and can
+ * then be used to {@link #extract(CharSequence)} any number of documents, from any number of threads.
+ * The chain runs the same stages as {@link FilterChainEclipse} (or {@link FilterChainMozilla}
+ * when Talkback traces are wanted) and produces the same output text. Unlike those chains,
+ * the engine reports the positions of all elements in the coordinates of the input text.
+ * @author Nicolas Bettenburg
+ *
+ */
+public class FilterChainEngine {
+
+	private final boolean talkback;
+	
+	private final boolean runPatches;
+	private final boolean runTraces;
+	private final boolean runSource;
+	private final boolean runEnums;
+	
+	// The filters are stateless, so one instance of each serves every call
+	private final FilterPatches patchFilter;
+	private final FilterStackTraceJAVA stacktraceFilter;
+	private final FilterTalkBack talkbackFilter;
+	private final FilterSourceCodeJAVA sourcecodeFilter;
+	private final FilterEnumeration enumFilter;
+	
+	// The regular expression budget of every document, 0 for no limit
+	private final long documentSteps;
+	private final long filterSteps;
+	
+	private FilterChainEngine(JavaCodeDB codeDB, boolean relaxedPatches, boolean talkback,
+			boolean runPatches, boolean runTraces, boolean runSource, boolean runEnums) {
+		this.talkback = talkback;
+		this.runPatches = runPatches;
+		this.runTraces = runTraces;
+		this.runSource = runSource;
+		this.runEnums = runEnums;
+		
+		this.patchFilter = new FilterPatches(relaxedPatches);
+		this.stacktraceFilter = new FilterStackTraceJAVA();
+		this.talkbackFilter = new FilterTalkBack();
+		this.sourcecodeFilter = new FilterSourceCodeJAVA(codeDB);
+		this.enumFilter = new FilterEnumeration();
+		this.documentSteps = 0;
+		this.filterSteps = 0;
+	}
+	
+	private FilterChainEngine(FilterChainEngine engine, FilterStackTraceJAVA stacktraceFilter, long documentSteps, long filterSteps) {
+		this.talkback = engine.talkback;
+		this.runPatches = engine.runPatches;
+		this.runTraces = engine.runTraces;
+		this.runSource = engine.runSource;
+		this.runEnums = engine.runEnums;
+		
+		this.patchFilter = engine.patchFilter;
+		this.stacktraceFilter = stacktraceFilter;
+		this.talkbackFilter = engine.talkbackFilter;
+		this.sourcecodeFilter = engine.sourcecodeFilter;
+		this.enumFilter = engine.enumFilter;
+		this.documentSteps = documentSteps;
+		this.filterSteps = filterSteps;
+	}
+	
+	/**
+	 * Create an engine like this one that bounds the work of the regular expressions on every document,
+	 * see {@link RegexBudget}. A stage that runs out of its budget keeps the elements it found so far and
+	 * the result is marked {@link FilterChainResult#isPartial() partial}. By default there is no limit.
+	 * @param documentSteps how many characters the regular expressions of all stages together may read per document, 0 for no limit
+	 * @param filterSteps how many characters the regular expressions of a single stage may read per document, 0 for no limit
+	 * @return a new engine.
+	 */
+	public FilterChainEngine withRegexBudget(long documentSteps, long filterSteps) {
+		return new FilterChainEngine(this, stacktraceFilter, documentSteps, filterSteps);
+	}
+	
+	/**
+	 * Create an engine like this one that finds Java stack traces with the {@link JavaStackTraceLexer},
+	 * which takes linear time on any input, instead of the regular expressions of {@link FilterStackTraceJAVA}.
+	 * The two may find slightly different traces, so both are available for comparison.
+	 * @param lexer true to use the lexer, false to use the regular expressions
+	 * @return a new engine.
+	 */
+	public FilterChainEngine withStackTraceLexer(boolean lexer) {
+		return new FilterChainEngine(this, new FilterStackTraceJAVA(lexer), documentSteps, filterSteps);
+	}
+	
+	/**
+	 * Create an engine for eclipse inputs that runs all filters, like {@link FilterChainEclipse}.
+	 * @return a new engine.
+	 */
+	public static FilterChainEngine eclipse() {
+		return eclipse(true, true, true, true);
+	}
+	
+	/**
+	 * Create an engine for eclipse inputs that extracts Java stack traces. Running only patches and
+	 * traces gives the same results as {@link FilterChainEclipsePS}.
+	 * @return a new engine.
+	 */
+	public static FilterChainEngine eclipse(boolean runPatches, boolean runTraces, boolean runSource, boolean runEnums) {
+		return new FilterChainEngine(JavaCodeDB.getDefault(), false, false, runPatches, runTraces, runSource, runEnums);
+	}
+	
+	/**
+	 * Create an engine for Mozilla inputs that runs all filters, like {@link FilterChainMozilla}.
+	 * @return a new engine.
+	 */
+	public static FilterChainEngine mozilla() {
+		return mozilla(true, true, true, true);
+	}
+	
+	/**
+	 * Create an engine for Mozilla inputs that looks for relaxed patches and Talkback traces.
+	 * @return a new engine.
+	 */
+	public static FilterChainEngine mozilla(boolean runPatches, boolean runTraces, boolean runSource, boolean runEnums) {
+		return new FilterChainEngine(JavaCodeDB.getDefault(), true, true, runPatches, runTraces, runSource, runEnums);
+	}
+	
+	/**
+	 * Run the filter chain on a single input text. This method does not modify the engine
+	 * and may be called concurrently.
+	 * <p>
+	 * All stages collect their deletions in the coordinates of the input text, and the positions
+	 * of all extracted elements refer to the input text as well, no matter which stage found them.
+	 * <p>
+	 * A {@link MappedText} is searched where it lies, since it already reads with Linux newlines.
+	 * Any other text is copied once to normalize its newlines.
+	 * @param inputText the text to extract structural elements from.
+	 * @return the extracted elements and the remaining text.
+	 */
+	public FilterChainResult extract(CharSequence inputText) {
+		CharSequence text = (inputText instanceof MappedText) ? inputText
+				: RegExHelper.makeLinuxNewlines(inputText.toString());
+		
+		// One set of deletions for the whole chain, in the coordinates of the input text.
+		// Every stage reads a view of the input text without the deletions of the stages before it,
+		// and stages that read the same view share its line index.
+		FilterTextRemover remover = new FilterTextRemover(text);
+		RegexBudget budget = new RegexBudget(documentSteps, filterSteps);
+		FilterInput stageInput = new FilterInput(text, budget);
+		OffsetMap stageMap = OffsetMap.identity(text.length());
+		
+		List<Patch> patches = new ArrayList<Patch>();
+		List<StackTrace> traces = new ArrayList<StackTrace>();
+		List<TalkbackTrace> talkbackTraces = new ArrayList<TalkbackTrace>();
+		List<CodeRegion> regions = new ArrayList<CodeRegion>();
+		List<Enumeration> enumerations = new ArrayList<Enumeration>();
+		
+		if (runPatches) {
+			FilterResult<Patch> result = patchFilter.filter(stageInput);
+			patches = result.getElements();
+			for (Patch patch : patches) {
+				if (patch.getStartPosition() < 0 || patch.getEndPosition() > stageMap.getLength())
+					continue;
+				int start = stageMap.toOriginal(patch.getStartPosition());
+				patch.setEndPosition(Math.max(start, stageMap.toOriginalEnd(patch.getEndPosition())));
+				patch.setStartPosition(start);
+			}
+			if (markForDeletion("FilterPatches", remover, stageMap, result.getDeletions())) {
+				stageMap = remover.getOffsetMap();
+				stageInput = new FilterInput(new FilteredText(text, stageMap), budget);
+			}
+		}
+		
+		if (runTraces) {
+			if (talkback) {
+				FilterResult<TalkbackTrace> result = talkbackFilter.filter(stageInput);
+				talkbackTraces = result.getElements();
+				if (markForDeletion("FilterTalkBack", remover, stageMap, result.getDeletions())) {
+					stageMap = remover.getOffsetMap();
+					stageInput = new FilterInput(new FilteredText(text, stageMap), budget);
+				}
+			} else {
+				FilterResult<StackTrace> result = stacktraceFilter.filter(stageInput);
+				traces = result.getElements();
+				for (StackTrace trace : traces) {
+					// Traces that could not be located keep their position
+					if (trace.getTraceStart() < 0 || trace.getTraceEnd() > stageMap.getLength())
+						continue;
+					int start = stageMap.toOriginal(trace.getTraceStart());
+					trace.setTraceEnd(Math.max(start, stageMap.toOriginalEnd(trace.getTraceEnd())));
+					trace.setTraceStart(start);
+				}
+				if (markForDeletion(stacktraceFilter.getStageName(), remover, stageMap, result.getDeletions())) {
+					stageMap = remover.getOffsetMap();
+					stageInput = new FilterInput(new FilteredText(text, stageMap), budget);
+				}
+			}
+		}
+		
+		if (runSource) {
+			FilterResult<CodeRegion> result = sourcecodeFilter.filter(stageInput);
+			regions = result.getElements();
+			for (CodeRegion region : regions) {
+				int start = stageMap.toOriginal(region.start);
+				region.end = Math.max(start, stageMap.toOriginalEnd(region.end));
+				region.start = start;
+			}
+			if (markForDeletion("FilterSourceCodeJAVA", remover, stageMap, result.getDeletions())) {
+				stageMap = remover.getOffsetMap();
+				stageInput = new FilterInput(new FilteredText(text, stageMap), budget);
+			}
+		}
+		
+		// Enumerations are natural language, so they stay in the output of the filter chain
+		if (runEnums) {
+			enumerations = enumFilter.filter(stageInput).getElements();
+			for (Enumeration enumeration : enumerations) {
+				if (enumeration.getEnumStart() < 0 || enumeration.getEnumEnd() > stageMap.getLength())
+					continue;
+				int start = stageMap.toOriginal(enumeration.getEnumStart());
+				enumeration.setEnumEnd(Math.max(start, stageMap.toOriginalEnd(enumeration.getEnumEnd())));
+				enumeration.setEnumStart(start);
+			}
+		}
+		
+		// The only copy of the remaining text
+		String outputText = remover.doDelete();
+		
+		return new FilterChainResult(text, outputText, stageMap, patches, traces, talkbackTraces, regions, enumerations,
+				budget.isPartial());
+	}
+	
+	/**
+	 * Translate the deletions a stage reported on its own input text to the input text of the
+	 * chain and add them to the deletions of the chain, and record how much the stage removed.
+	 * @return true if any deletion was added, that is the text of the next stage changes.
+	 */
+	private static boolean markForDeletion(String stage, FilterTextRemover remover, OffsetMap stageMap, List<TextSpan> deletions) {
+		List<TextSpan> removed = new ArrayList<TextSpan>(deletions.size());
+		for (TextSpan span : deletions) {
+			if (span.getStart() < 0 || span.getEnd() > stageMap.getLength()) {
+				System.err.println("Warning! Trying to Delete out of Bounds: " + span.getStart() + " until " + span.getEnd() + " but bounds are 0:"  + stageMap.getLength());
+				System.err.println("Will not mark for deletion!");
+				continue;
+			}
+			if (span.getStart() >= span.getEnd())
+				continue;
+			remover.markForDeletion(stageMap.toOriginal(span.getStart()), stageMap.toOriginalEnd(span.getEnd()));
+			removed.add(span);
+		}
+		FilterStatistics.getDefault().recordRemoved(stage, removed, stageMap.getLength());
+		return !removed.isEmpty();
+	}
+	
+}
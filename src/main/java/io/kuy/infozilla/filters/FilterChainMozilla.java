@@ -40,20 +40,20 @@ public class FilterChainMozilla implements FilterChain {
 		patchFilter.setRelaxed(true);
 		
 		stacktraceFilter = new FilterTalkBack();
-		sourcecodeFilter = new FilterSourceCodeJAVA(FilterChainMozilla.class.getResource("/Java_CodeDB.txt"));
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
 		enumFilter = new FilterEnumeration();
 		
 		this.inputText = RegExHelper.makeLinuxNewlines(inputText);
 		this.outputText = this.inputText;
 		
 		patches = patchFilter.runFilter(outputText);
-		outputText = patchFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterPatches", outputText, patchFilter.getOutputText());
 					
 		traces = stacktraceFilter.runFilter(outputText);
-		outputText = stacktraceFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterTalkBack", outputText, stacktraceFilter.getOutputText());
 		 
 		regions = sourcecodeFilter.runFilter(outputText);
-		outputText = sourcecodeFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterSourceCodeJAVA", outputText, sourcecodeFilter.getOutputText());
 		 
 		enumerations = enumFilter.runFilter(outputText);
 		// The output of the filter chain
@@ -64,7 +64,7 @@ public class FilterChainMozilla implements FilterChain {
 		patchFilter = new FilterPatches();
 		//patchFilter.setRelaxed(true);
 		stacktraceFilter = new FilterTalkBack();
-		sourcecodeFilter = new FilterSourceCodeJAVA(FilterChainMozilla.class.getResource("/Java_CodeDB.txt"));
+		sourcecodeFilter = new FilterSourceCodeJAVA(JavaCodeDB.getDefault());
 		enumFilter = new FilterEnumeration();
 		
 		this.inputText = RegExHelper.makeLinuxNewlines(inputText);
@@ -73,17 +73,17 @@ public class FilterChainMozilla implements FilterChain {
 		if (runPatches) patches = patchFilter.runFilter(outputText);
 		else patches = new ArrayList<Patch>();
 		
-		outputText = patchFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterPatches", outputText, patchFilter.getOutputText());
 					
 		if (runTraces) traces = stacktraceFilter.runFilter(outputText);
 		else traces = new ArrayList<TalkbackTrace>();
 		
-		outputText = stacktraceFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterTalkBack", outputText, stacktraceFilter.getOutputText());
 		 
 		if (runSource) regions = sourcecodeFilter.runFilter(outputText);
 		else regions = new ArrayList<CodeRegion>();
 		
-		outputText = sourcecodeFilter.getOutputText();
+		outputText = FilterStatistics.getDefault().recordOutput("FilterSourceCodeJAVA", outputText, sourcecodeFilter.getOutputText());
 		 
 		if (runEnums) enumerations = enumFilter.runFilter(outputText);
 		else enumerations = new ArrayList<Enumeration>();
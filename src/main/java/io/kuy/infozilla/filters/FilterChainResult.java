@@ -0,0 +1,123 @@
+/**
+ * FilterChainResult.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.kuy.infozilla.elements.enumeration.Enumeration;
+import io.kuy.infozilla.elements.patch.Patch;
+import io.kuy.infozilla.elements.sourcecode.java.CodeRegion;
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackTrace;
+
+/**
+ * The structural elements a {@link FilterChainEngine} extracted from a single input text,
+ * together with the remaining natural language text. The positions of all elements refer
+ * to the input text.
+ * @author Nicolas Bettenburg
+ *
+ */
+public class FilterChainResult {
+
+	private final CharSequence inputText;
+	private final String outputText;
+	private final OffsetMap offsetMap;
+	
+	private final List<Patch> patches;
+	private final List<StackTrace> traces;
+	private final List<TalkbackTrace> talkbackTraces;
+	private final List<CodeRegion> regions;
+	private final List<Enumeration> enumerations;
+	
+	private final boolean partial;
+	
+	public FilterChainResult(CharSequence inputText, String outputText, OffsetMap offsetMap, List<Patch> patches, List<StackTrace> traces,
+			List<TalkbackTrace> talkbackTraces, List<CodeRegion> regions, List<Enumeration> enumerations) {
+		this(inputText, outputText, offsetMap, patches, traces, talkbackTraces, regions, enumerations, false);
+	}
+	
+	/**
+	 * @param partial whether a stage stopped early, see {@link #isPartial()}
+	 */
+	public FilterChainResult(CharSequence inputText, String outputText, OffsetMap offsetMap, List<Patch> patches, List<StackTrace> traces,
+			List<TalkbackTrace> talkbackTraces, List<CodeRegion> regions, List<Enumeration> enumerations, boolean partial) {
+		this.inputText = inputText;
+		this.outputText = outputText;
+		this.offsetMap = offsetMap;
+		this.patches = Collections.unmodifiableList(patches);
+		this.traces = Collections.unmodifiableList(traces);
+		this.talkbackTraces = Collections.unmodifiableList(talkbackTraces);
+		this.regions = Collections.unmodifiableList(regions);
+		this.enumerations = Collections.unmodifiableList(enumerations);
+		this.partial = partial;
+	}
+	
+	/**
+	 * A result is partial when a stage ran out of its regular expression budget, or the thread
+	 * was interrupted. Such a stage may have missed elements, which then stay in the output text.
+	 * @return whether the result may be incomplete
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/**
+	 * @return the inputText (with linux newlines), copied into a String if it was given as a {@link io.kuy.infozilla.helpers.MappedText}
+	 */
+	public String getInputText() {
+		return inputText.toString();
+	}
+
+	/**
+	 * @return the outputText
+	 */
+	public String getOutputText() {
+		return outputText;
+	}
+
+	/**
+	 * @return the map from positions in the outputText to positions in the inputText
+	 */
+	public OffsetMap getOffsetMap() {
+		return offsetMap;
+	}
+
+	/**
+	 * @return the patches
+	 */
+	public List<Patch> getPatches() {
+		return patches;
+	}
+
+	/**
+	 * @return the java stack traces
+	 */
+	public List<StackTrace> getTraces() {
+		return traces;
+	}
+
+	/**
+	 * @return the talkback traces
+	 */
+	public List<TalkbackTrace> getTalkbackTraces() {
+		return talkbackTraces;
+	}
+
+	/**
+	 * @return the regions
+	 */
+	public List<CodeRegion> getRegions() {
+		return regions;
+	}
+
+	/**
+	 * @return the enumerations
+	 */
+	public List<Enumeration> getEnumerations() {
+		return enumerations;
+	}
+	
+}
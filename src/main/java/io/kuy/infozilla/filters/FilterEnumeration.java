@@ -6,84 +6,71 @@ package io.kuy.infozilla.filters;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.MatchResult;
-import java.util.regex.Pattern;
 
 import io.kuy.infozilla.elements.enumeration.Enumeration;
-import io.kuy.infozilla.helpers.RegExHelper;
 
-public class FilterEnumeration implements IFilter {
+public class FilterEnumeration implements IFilter, IReentrantFilter<Enumeration> {
 	
-	private FilterTextRemover textRemover;
-	private String processedText = "";
+	/** The result of the last call to runFilter(), kept for getOutputText() */
+	private FilterResult<Enumeration> lastResult;
 	
 	
 	/**
 	 * Used internally to remove enumeration lines later
 	 * @param lineNum
-	 * @param text
+	 * @param lines the lines of the text
+	 * @param deletions the list of spans to add the line to
 	 */
-	private void filterLine(int lineNum, String text) {
+	private void filterLine(int lineNum, LineIndex lines, List<TextSpan> deletions) {
 //		System.err.println("Called to filter line number: " + lineNum);
-		String[] lines = text.split("[\n\r]");
 		
 		// Calculate start position
-		int start = 0;
-		for (int i=0; i < lineNum; i++) {
-			start = start + lines[i].length() + 1;
-		}
+		int start = lines.getLineStart(lineNum);
 		// Calculate end position
-		int end = start + lines[lineNum].length();
-		/*System.err.println("Filtering Line: " + lines[lineNum]);
+		int end = lines.getLineEnd(lineNum);
+		/*System.err.println("Filtering Line: " + lines.getLine(lineNum));
 		System.err.println("Range: " + start + " - " + (end+1));
-		System.err.println(textRemover.getText().substring(start, (end+1)));
-		System.out.println("}}}}" + textRemover.getText() + "{{{{\n\n");*/
+		System.err.println(text.substring(start, (end+1)));
+		System.out.println("}}}}" + text + "{{{{\n\n");*/
 		// Mark this range for deletion
-		textRemover.markForDeletion(start, end+1);
+		deletions.add(new TextSpan(start, end+1));
 	}
 	
 	/**
 	 * Create an Enumeration by a given regions
 	 * @param startline the line where some enumeration starts
 	 * @param endline the last line where an enumerator symbol was found
-	 * @param text the complete text where the enumeration is in
+	 * @param lines the lines of the complete text where the enumeration is in
+	 * @param deletions the list of spans to add the enumeration lines to
 	 * @return an {@link Enumeration}
 	 */
-	private Enumeration createEnumeration(int startline, int endline, String text) {
+	private Enumeration createEnumeration(int startline, int endline, LineIndex lines, List<TextSpan> deletions) {
 		assert(startline >= 0);
 		assert(endline >= 0);
 		
-		String[] lines = text.split("[\n\r]");
 		List<String> enumLines = new ArrayList<String>();
 		
 		// All lines from start to end added
 		for (int i = startline; i < endline; i++) {
-			enumLines.add(lines[i]);
-			filterLine(i, text);
+			enumLines.add(lines.getLine(i));
+			filterLine(i, lines, deletions);
 		}
 		// and all lines from endline till the end of the paragraph!
 		int lastline = endline;
-		for (int i = endline; i < lines.length; i++)
-			if (lines[i].length() == 0) {
+		for (int i = endline; i < lines.getLineCount(); i++)
+			if (lines.getLineLength(i) == 0) {
 				break;
 			}
 			else {
-				enumLines.add(lines[i]);
-				filterLine(i, text);
+				enumLines.add(lines.getLine(i));
+				filterLine(i, lines, deletions);
 				lastline = i;
 			}
 		
 		// Calculate start position
-		int eStart = 0;
-		for (int i=0; i < startline; i++) {
-			eStart = eStart + lines[i].length()+1;
-		}
+		int eStart = lines.getLineStart(startline);
 		// Calculate end position
-		int eEnd = eStart;
-		for (int i = startline; i < lastline; i++) {
-			eEnd = eEnd + lines[i].length() +1;
-		}
-		eEnd = eEnd + lines[lastline].length();
+		int eEnd = lines.getLineEnd(lastline);
 		
 		Enumeration e = new Enumeration(enumLines, startline, lastline);
 		e.setEnumStart(eStart);
@@ -93,244 +80,239 @@ public class FilterEnumeration implements IFilter {
 	
 	
 	/**
-	 * Retrieve all Enumerations that have some alphabetical letter as enumerator
-	 * @param s The text to look inside for character enumerations
-	 * @return a List of {@link Enumeration}s
+	 * Check whether a line starts like a character enumeration item, that is "A. ", "a) ", "(a) ", "a.) " and so on.
+	 * @param text the text the line is in
+	 * @param start the first character of the line without leading white space
+	 * @param end the end of the line without trailing white space
+	 * @return the enumerator letter, or -1 if the line is no character enumeration item
 	 */
-	private List<Enumeration> getCharEnums(String s) {	
-		List<Enumeration> foundEnumerations = new ArrayList<Enumeration>();
-		
-		// RegEx for Enumerations Start
-		// like  A A. A) A.) a a. a) a.)  (A)  (a) etc.
-		final String regex_EnumStart = "^\\(?([a-zA-Z])(\\.|\\.\\)|\\))[a-zA-Z \t].*";
-		final Pattern pattern_EnumStart = Pattern.compile(regex_EnumStart);
-		
-		// Split the input into lines
-		String[] lines = s.split("[\n\r]");
-		
-		int enumStart = -1;
-		int enumEnd = -1;
-		int previousEnumLineFound = -1;
-		String lastFoundEnumSymbol = "";
-		int symbolCount = 0;
-		
-		// For each Line 
-		for (int i=0; i < lines.length; i++) {
-			
-			// Remove trailing and leading spaces
-			String line = lines[i].trim();
-			
-			// See if the line looks like some enumeration stuff
-			if (line.matches(regex_EnumStart)) {
-				symbolCount++;
-				// Initialize the start of an Enumeration if none was found before!
-				if (enumStart < 0)
-					enumStart = i;
-				
-				// Store the Symbol we found this time
-				String foundEnumSymbol = "";
-				for (MatchResult match : RegExHelper.findMatches(pattern_EnumStart, line)) {
-					foundEnumSymbol = match.group(1);
-				}
-				
-				// Check whether the Symbol is an increase over the previous Symbol
-				if (foundEnumSymbol.compareTo(lastFoundEnumSymbol) > 0) {
-					// If we have an increase, add all line between the last enum line
-					// and the current line (i) to the array of found lines (lineBuffer)
-					enumEnd = i;
-					
-				} else {
-					// This indicates a new Enumeration has started.
-					// So we need to add all lines starting from the previous enum line found
-					// until the end of the paragraph (empty line);
-					if (enumEnd < 0)
-						enumEnd = previousEnumLineFound;
-					if (symbolCount > 1) {
-						Enumeration someEnum = createEnumeration(enumStart, enumEnd, s);
-						foundEnumerations.add(someEnum);
-					}
-					// Reset the counters
-					enumStart = i;
-					enumEnd = -1;
-					symbolCount = 0;
-				}
-				
-				lastFoundEnumSymbol = foundEnumSymbol;
-				previousEnumLineFound = i;
-			}	
+	private static int getCharEnumSymbol(CharSequence text, int start, int end) {
+		int i = start;
+		if (i < end && text.charAt(i) == '(')
+			i++;
+		if (i >= end || !isLetter(text.charAt(i)))
+			return -1;
+		int symbol = text.charAt(i);
+		int itemStart = getItemStart(text, i + 1, end, false);
+		if (itemStart < 0 || !isPlainLine(text, itemStart, end))
+			return -1;
+		return symbol;
+	}
+	
+	/**
+	 * Check whether a line starts like a number enumeration item, that is "1. ", "1) ", "(1) ", "1.) ", "1- " and so on.
+	 * @param text the text the line is in
+	 * @param start the first character of the line without leading white space
+	 * @param end the end of the line without trailing white space
+	 * @return the enumerator number (Integer.MAX_VALUE if it is too large), or -1 if the line is no number enumeration item
+	 */
+	private static int getNumEnumSymbol(CharSequence text, int start, int end) {
+		int i = start;
+		if (i < end && text.charAt(i) == '(')
+			i++;
+		long symbol = 0;
+		int digits = 0;
+		while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+			symbol = Math.min(10 * symbol + (text.charAt(i) - '0'), Integer.MAX_VALUE);
+			digits++;
+			i++;
 		}
-		
-		// At the end put all remaining gathered lines into an Enumeration
-		if (enumEnd < 0)
-			enumEnd = previousEnumLineFound;
-		
-		if (enumStart >= 0 && symbolCount > 1) {
-			Enumeration lastEnumeration = createEnumeration(enumStart, enumEnd, s);
-			foundEnumerations.add(lastEnumeration);
+		if (digits == 0)
+			return -1;
+		int itemStart = getItemStart(text, i, end, true);
+		if (itemStart < 0 || !isPlainLine(text, itemStart, end))
+			return -1;
+		return (int) symbol;
+	}
+	
+	/**
+	 * Check the part of an enumeration item between its enumerator and its text: one of ".", ".)", ")"
+	 * and for numbers "-", followed by a letter, a space or a tab.
+	 * @return the position after that letter, space or tab, or -1 if there is no such part
+	 */
+	private static int getItemStart(CharSequence text, int i, int end, boolean allowDash) {
+		if (i < end && text.charAt(i) == '.') {
+			if (i + 1 < end && isItemChar(text.charAt(i + 1)))
+				return i + 2;
+			if (i + 2 < end && text.charAt(i + 1) == ')' && isItemChar(text.charAt(i + 2)))
+				return i + 3;
+			return -1;
 		}
-		// Return the list of found Enumerations!
-		return foundEnumerations;
+		if (i + 1 < end && (text.charAt(i) == ')' || (allowDash && text.charAt(i) == '-')) && isItemChar(text.charAt(i + 1)))
+			return i + 2;
+		return -1;
+	}
+	
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private static boolean isItemChar(char c) {
+		return isLetter(c) || c == ' ' || c == '\t';
 	}
 	
 	/**
-	 * Retrieve all Enumerations that have some number as enumerator
-	 * @param s The text to look inside for number enumerations
-	 * @return a List of {@link Enumeration}s
+	 * Enumeration items have to continue up to the end of the line without any other line terminator.
 	 */
-	private List<Enumeration> getNumEnums(String s) {	
-		List<Enumeration> foundEnumerations = new ArrayList<Enumeration>();
-		
-		// RegEx for Enumerations Start
-		// like  1 1. 1) 1.) (1) 1-
-		final String regex_EnumStart = "^\\(?([0-9]+)(\\.|\\.\\)|\\)|\\-)[a-zA-Z \t].*";
-		final Pattern pattern_EnumStart = Pattern.compile(regex_EnumStart);
-		
-		// Split the input into lines
-		String[] lines = s.split("[\n\r]");
-		
-		int enumStart = -1;
-		int enumEnd = -1;
-		int previousEnumLineFound = -1;
-		int lastFoundEnumSymbol = -1;
-		int symbolCount = 0;
+	private static boolean isPlainLine(CharSequence text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == '\u0085' || c == '\u2028' || c == '\u2029')
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Scan the text once, line by line, and find all Enumerations that have some alphabetical letter or
+	 * some number as enumerator, as well as all Itemizations.
+	 * @param lines The lines of the text to look inside for enumerations and itemizations
+	 * @param charEnums the list to add the found character enumerations to
+	 * @param numEnums the list to add the found number enumerations to
+	 * @param itemizations the list to add the found itemizations to
+	 * @param deletions the list of spans to add all found enumerations to
+	 */
+	private void findEnumerations(LineIndex lines, List<Enumeration> charEnums, List<Enumeration> numEnums,
+			List<Enumeration> itemizations, List<TextSpan> deletions) {
+		CharSequence text = lines.getText();
+		
+		// Keep the lines of each kind apart, so the deletions come out in the same order as the enumerations
+		List<TextSpan> charDeletions = new ArrayList<TextSpan>();
+		List<TextSpan> numDeletions = new ArrayList<TextSpan>();
+		List<TextSpan> itemizeDeletions = new ArrayList<TextSpan>();
+		
+		// Character enumerations like  A A. A) A.) a a. a) a.)  (A)  (a) etc.
+		int charStart = -1;
+		int charEnd = -1;
+		int charPrevious = -1;
+		int charLastSymbol = -1;
+		int charCount = 0;
+		
+		// Number enumerations like  1 1. 1) 1.) (1) 1-
+		int numStart = -1;
+		int numEnd = -1;
+		int numPrevious = -1;
+		int numLastSymbol = -1;
+		int numCount = 0;
+		
+		// Itemizations like - item
+		int itemizeLineCounter = 0;
+		int itemizeBegin = -1;
+		int lastItemizeEnd = -1;
 		
 		// For each Line 
-		for (int i=0; i < lines.length; i++) {
-			
-			// Remove trailing and leading spaces
-			String line = lines[i].trim();
+		for (int i=0; i < lines.getLineCount(); i++) {
+			// Remove trailing and leading spaces, just like String.trim() does
+			int start = lines.getLineStart(i);
+			int end = lines.getLineEnd(i);
+			while (start < end && text.charAt(start) <= ' ')
+				start++;
+			while (end > start && text.charAt(end - 1) <= ' ')
+				end--;
 			
-			// See if the line looks like some enumeration stuff
-			if (line.matches(regex_EnumStart)) {
-				symbolCount++;
-				
+			// See if the line looks like a character enumeration
+			int charSymbol = getCharEnumSymbol(text, start, end);
+			if (charSymbol >= 0) {
+				charCount++;
 				// Initialize the start of an Enumeration if none was found before!
-				if (enumStart < 0)
-					enumStart = i;
+				if (charStart < 0)
+					charStart = i;
 				
-				// Store the Symbol we found this time
-				int foundEnumSymbol = -1;
-				for (MatchResult match : RegExHelper.findMatches(pattern_EnumStart, line)) {
-					try {
-						foundEnumSymbol = Integer.valueOf(match.group(1));
-					} catch (NumberFormatException e) {
-						foundEnumSymbol = Integer.MAX_VALUE;
-					}
+				// Check whether the Symbol is an increase over the previous Symbol
+				if (charSymbol > charLastSymbol) {
+					charEnd = i;
+				} else {
+					// This indicates a new Enumeration has started, so the previous one ends
+					// with the end of the paragraph of the last enumeration line
+					if (charEnd < 0)
+						charEnd = charPrevious;
+					if (charCount > 1)
+						charEnums.add(createEnumeration(charStart, charEnd, lines, charDeletions));
+					// Reset the counters
+					charStart = i;
+					charEnd = -1;
+					charCount = 0;
 				}
+				charLastSymbol = charSymbol;
+				charPrevious = i;
+			}
+			
+			// See if the line looks like a number enumeration
+			int numSymbol = getNumEnumSymbol(text, start, end);
+			if (numSymbol >= 0) {
+				numCount++;
+				// Initialize the start of an Enumeration if none was found before!
+				if (numStart < 0)
+					numStart = i;
 				
 				// Check whether the Symbol is an increase over the previous Symbol
-				if (foundEnumSymbol > lastFoundEnumSymbol) {
-					// If we have an increase, add all line between the last enum line
-					// and the current line (i) to the array of found lines (lineBuffer)
-					enumEnd = i;
-					
+				if (numSymbol > numLastSymbol) {
+					numEnd = i;
 				} else {
-					// This indicates a new Enumeration has started.
-					// So we need to add all lines starting from the previous enum line found
-					// until the end of the paragraph (empty line);
-					if (enumEnd < 0)
-						enumEnd = previousEnumLineFound;
-					if (symbolCount > 1) {
-						Enumeration someEnum = createEnumeration(enumStart, enumEnd, s);
-						foundEnumerations.add(someEnum);
-					}
+					// This indicates a new Enumeration has started, so the previous one ends
+					// with the end of the paragraph of the last enumeration line
+					if (numEnd < 0)
+						numEnd = numPrevious;
+					if (numCount > 1)
+						numEnums.add(createEnumeration(numStart, numEnd, lines, numDeletions));
 					// Reset the counters
-					enumStart = i;
-					enumEnd = -1;
-					symbolCount = 0;
+					numStart = i;
+					numEnd = -1;
+					numCount = 0;
 				}
-				
-				lastFoundEnumSymbol = foundEnumSymbol;
-				previousEnumLineFound = i;
-			}	
-		}
-		
-		// At the end put all remaining gathered lines into an Enumeration
-		if (enumEnd < 0)
-			enumEnd = previousEnumLineFound;
-		
-		if (enumStart >= 0 && symbolCount > 1) {
-			Enumeration lastEnumeration = createEnumeration(enumStart, enumEnd, s);
-			foundEnumerations.add(lastEnumeration);
-		}
-		// Return the list of found Enumerations!
-		return foundEnumerations;
-	}
-	
-	/**
-	 * Find all Itemizations in a given Text
-	 * @param s The text to look inside for itemizations
-	 * @return a list of {@link Enumeration}s for each Itemization
-	 */
-	private List<Enumeration> getItemizations(String s) {
-		// All found itemizations will be stored in this list
-		List<Enumeration> foundItemizations = new ArrayList<Enumeration>();
-		
-		// Split the input into lines
-		String[] lines = s.split("[\n\r]");
-		
-		// Setup some counters to keep track of itemizations
-		int itemizeLineCounter = 0;
-		int itemizeBegin = -1;
-		int itemizeEnd = -1;
-		int lastItemizeEnd = -1;
-		
-		// For each Line 
-		for (int i=0; i < lines.length; i++) {
-			// Remove trailing and leading spaces
-			String line = lines[i].trim();
+				numLastSymbol = numSymbol;
+				numPrevious = i;
+			}
 			
-			// See if the line looks like some enumeration stuff
-			if (line.startsWith("- ")) {
-				// If this is a itemization line, then ...
+			// See if the line is an itemization line
+			if (end - start >= 2 && text.charAt(start) == '-' && text.charAt(start + 1) == ' ') {
 				itemizeLineCounter++;
-				
 				// If we haven't seen any itemization before
 				if (itemizeBegin < 0)
 					itemizeBegin = i;
-				
 				lastItemizeEnd = i;
-				
-			} else {
-				// If this is no itemization line, then ...
-				
-				// if it is an empty line then 
-				if (line.length() == 0) { 
-					// create an itemization if there are at least 2 itemize items
-					if (itemizeBegin >= 0 && itemizeLineCounter > 1) { 
-						// Create a new itemization
-						itemizeEnd = lastItemizeEnd;
-						Enumeration itemization = createEnumeration(itemizeBegin, itemizeEnd, s);
-						foundItemizations.add(itemization);
-					}
-					// And reset the counters
-					itemizeBegin = -1;
-					lastItemizeEnd = -1;
-					itemizeEnd = -1;
-					itemizeLineCounter = 0;
-				}
+			} else if (start == end) {
+				// An empty line ends an itemization if there are at least 2 itemize items
+				if (itemizeBegin >= 0 && itemizeLineCounter > 1)
+					itemizations.add(createEnumeration(itemizeBegin, lastItemizeEnd, lines, itemizeDeletions));
+				// And reset the counters
+				itemizeBegin = -1;
+				lastItemizeEnd = -1;
+				itemizeLineCounter = 0;
 			}
 		}
 		
-		// If there is any remaining itemization at the end
-		if (itemizeBegin >= 0 && itemizeLineCounter > 1) { 
-			// Create a new itemization
-			itemizeEnd = lastItemizeEnd;
-			Enumeration itemization = createEnumeration(itemizeBegin, itemizeEnd, s);
-			foundItemizations.add(itemization);
-		}
+		// At the end put all remaining gathered lines into Enumerations
+		if (charEnd < 0)
+			charEnd = charPrevious;
+		if (charStart >= 0 && charCount > 1)
+			charEnums.add(createEnumeration(charStart, charEnd, lines, charDeletions));
+		
+		if (numEnd < 0)
+			numEnd = numPrevious;
+		if (numStart >= 0 && numCount > 1)
+			numEnums.add(createEnumeration(numStart, numEnd, lines, numDeletions));
+		
+		if (itemizeBegin >= 0 && itemizeLineCounter > 1)
+			itemizations.add(createEnumeration(itemizeBegin, lastItemizeEnd, lines, itemizeDeletions));
 		
-		// Return the list of found Enumerations!
-		return foundItemizations;
+		deletions.addAll(charDeletions);
+		deletions.addAll(numDeletions);
+		deletions.addAll(itemizeDeletions);
 	}
 	
 	
 	// Still a dummy testing method
 	public void testFilter(String s) {
 	
-		setProcessedText(s);
+		LineIndex lines = new LineIndex(s);
+		List<TextSpan> deletions = new ArrayList<TextSpan>();
+		
+		List<Enumeration> enums = new ArrayList<Enumeration>();
+		List<Enumeration> enums2 = new ArrayList<Enumeration>();
+		List<Enumeration> enums3 = new ArrayList<Enumeration>();
+		findEnumerations(lines, enums, enums2, enums3, deletions);
 		
-		List<Enumeration> enums = getCharEnums(s);
 		for (Enumeration e : enums) {
 			System.out.println("### ENUMERATION ###");
 			System.out.println("### START=" + e.getStart());
@@ -339,11 +321,6 @@ public class FilterEnumeration implements IFilter {
 				System.out.println(">>> " + line);
 		}
 		
-		System.out.println("\n\n--------------------------------");
-		System.out.println(getProcessedText());
-		System.out.println("--------------------------------\n\n");
-		
-		List<Enumeration> enums2 = getNumEnums(s);
 		for (Enumeration e : enums2) {
 			System.out.println("### ENUMERATION ###");
 			System.out.println("### START=" + e.getStart());
@@ -352,12 +329,6 @@ public class FilterEnumeration implements IFilter {
 				System.out.println(">>> " + line);
 		}
 		
-		System.out.println("\n\n--------------------------------");
-		System.out.println(getProcessedText());
-		System.out.println("--------------------------------\n\n");
-		
-		
-		List<Enumeration> enums3 = getItemizations(s);
 		for (Enumeration e : enums3) {
 			System.out.println("### ITEMIZATION ###");
 			System.out.println("### START=" + e.getStart());
@@ -367,67 +338,52 @@ public class FilterEnumeration implements IFilter {
 		}
 		
 		System.out.println("\n\n--------------------------------");
-		System.out.println(getProcessedText());
+		System.out.println(new FilterResult<Enumeration>(s, enums, deletions).getOutputText());
 		System.out.println("--------------------------------\n\n");
 		
 	}
 	
 	/**
 	 * Runs this method to extract all Character- and Number Enumerations as well as Itemizations
-	 * @param s The Text to look inside for enumerations and itemizations
+	 * @param lines The lines of the Text to look inside for enumerations and itemizations
+	 * @param deletions the list of spans to add all found enumerations to
 	 * @return a List of all {@Enumeration}s found.
  	 */
-	private List<Enumeration> getEnumerationsAndItemizations(String s) {
+	private List<Enumeration> getEnumerationsAndItemizations(LineIndex lines, List<TextSpan> deletions) {
 		// Create an empty list to put the extracted enumerations in
 		List<Enumeration> enumerations = new ArrayList<Enumeration>();
 		
-		// Initialize the text filter with the text "s" we are given
-		this.setProcessedText(s);
-		
-		// Process all types of enumerations, while extracting already found items
-		List<Enumeration> charEnums = this.getCharEnums(s);
-		
-		List<Enumeration> numEnums = this.getNumEnums(s);
-		
-		List<Enumeration> itemizations = this.getItemizations(s);
+		// Process all types of enumerations in a single pass, while collecting the lines of already found items
+		List<Enumeration> charEnums = new ArrayList<Enumeration>();
+		List<Enumeration> numEnums = new ArrayList<Enumeration>();
+		List<Enumeration> itemizations = new ArrayList<Enumeration>();
+		this.findEnumerations(lines, charEnums, numEnums, itemizations, deletions);
 		
 		// All add discovered items to the final list
 		enumerations.addAll(charEnums);
 		enumerations.addAll(numEnums);
 		enumerations.addAll(itemizations);
 		
-		// Return the list of enumerations - now this.processedText contains the final text
-		// after all processing steps (this can be used later on)
+		// Return the list of enumerations - deletions now contains the lines of all of them
 		return enumerations;
 	}
-
-	/**
-	 * get the text after being processed by getEnumerationsAndItemizations() method
-	 * this is initially empty string
-	 * @return a String that contains the text after being processed.
-	 */
-	private String getProcessedText() {
-		if (textRemover == null) {
-			System.err.println("We need an Instance of FilterTextRemover first!");
-			System.err.println("Make sure you call setProcessedText before getProcessedText!");
-			System.exit(1);
-		}
-		this.processedText = textRemover.doDelete();
-		return this.processedText;
-	}
-
-	
-	// This method shall only be used internally !!
-	private void setProcessedText(String processedText) {
-		this.textRemover = new FilterTextRemover(processedText);
-	}
 	
 	public String getOutputText() {
-		return getProcessedText();
+		return lastResult.getOutputText();
 	}
 
 
 	public List<Enumeration> runFilter(String inputText) {
-		return getEnumerationsAndItemizations(inputText);
+		lastResult = filter(inputText);
+		return new ArrayList<Enumeration>(lastResult.getElements());
+	}
+	
+	public FilterResult<Enumeration> filter(FilterInput input) {
+		FilterStatistics.Sample sample = FilterStatistics.getDefault().start();
+		List<TextSpan> deletions = new ArrayList<TextSpan>();
+		List<Enumeration> enumerations = getEnumerationsAndItemizations(input.getLineIndex(), deletions);
+		FilterResult<Enumeration> result = new FilterResult<Enumeration>(input.getText(), enumerations, deletions);
+		FilterStatistics.getDefault().record("FilterEnumeration", sample, result);
+		return result;
 	}
 }
@@ -0,0 +1,73 @@
+/**
+ * FilterInput.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import io.kuy.infozilla.helpers.RegexBudget;
+
+/**
+ * The text an {@link IReentrantFilter} runs on, together with information about it that
+ * several filters need. Such information is computed on first use only, and then shared by
+ * all filters that get the same input.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class FilterInput {
+
+	private final CharSequence text;
+	
+	private final RegexBudget regexBudget;
+
+	/** Built on first use. LineIndex is immutable, so a race only costs building it twice */
+	private LineIndex lineIndex;
+	
+	/** Scanned on first use. TextFeatures is immutable, so a race only costs scanning twice */
+	private TextFeatures features;
+
+	public FilterInput(CharSequence text) {
+		this(text, RegexBudget.unlimited());
+	}
+	
+	/**
+	 * @param text the text to filter
+	 * @param regexBudget the budget the regular expressions of the filters count against
+	 */
+	public FilterInput(CharSequence text, RegexBudget regexBudget) {
+		this.text = text;
+		this.regexBudget = regexBudget;
+	}
+
+	/**
+	 * @return the text to filter
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	/**
+	 * @return the budget for the regular expressions of the filters, shared by all stages of a document
+	 */
+	public RegexBudget getRegexBudget() {
+		return regexBudget;
+	}
+	
+	/**
+	 * @return the positions of the lines of the text
+	 */
+	public LineIndex getLineIndex() {
+		if (lineIndex == null)
+			lineIndex = new LineIndex(text);
+		return lineIndex;
+	}
+	
+	/**
+	 * @return the literals of the text that tell which filters may find anything in it
+	 */
+	public TextFeatures getFeatures() {
+		if (features == null)
+			features = TextFeatures.scan(text);
+		return features;
+	}
+
+}
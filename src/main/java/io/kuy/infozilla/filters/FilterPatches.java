@@ -4,6 +4,7 @@
  */
 package io.kuy.infozilla.filters;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import io.kuy.infozilla.elements.patch.Patch;
@@ -14,23 +15,25 @@ import io.kuy.infozilla.elements.patch.Patch;
  * @author Nicolas Bettenburg
  *
  */
-public class FilterPatches implements IFilter {
+public class FilterPatches implements IFilter, IReentrantFilter<Patch> {
 
-	private FilterTextRemover textRemover;
+	/** The result of the last call to runFilter(), kept for getOutputText() */
+	private FilterResult<Patch> lastResult;
 	private boolean relaxed = false;
 	
 	public FilterPatches() {
 	}
 	
+	public FilterPatches(boolean relaxed) {
+		this.relaxed = relaxed;
+	}
+	
 	/**
 	 * Filter a list of {@link Patch}es from a text {@link s}
-	 * @param text the text we should look for patches inside
+	 * @param text the lines of the text we should look for patches inside
 	 * @return a List of {@link Patch}es.
 	 */
-	private List<Patch> getPatches(String text) {
-		// Setup Helper classes
-		textRemover = new FilterTextRemover(text);
-		
+	private List<Patch> getPatches(LineIndex text) {
 		// Find Patches		
 		List<Patch> foundPatches = null;
 		if ( isRelaxed() ) {
@@ -40,21 +43,31 @@ public class FilterPatches implements IFilter {
 			PatchParser pp = new PatchParser();
 			foundPatches = pp.parseForPatches(text);
 		}
+		return foundPatches;
+	}
 
+	public FilterResult<Patch> filter(FilterInput input) {
+		FilterStatistics.Sample sample = FilterStatistics.getDefault().start();
+		// A text without hunk headers holds no patches, and needs no line index either
+		List<Patch> foundPatches = input.getFeatures().mayContainPatches() ? getPatches(input.getLineIndex()) : new ArrayList<Patch>();
+		
 		// Filter them out
+		List<TextSpan> deletions = new ArrayList<TextSpan>();
 		for (Patch patch : foundPatches) {
-			textRemover.markForDeletion(patch.getStartPosition(), patch.getEndPosition());
+			deletions.add(new TextSpan(patch.getStartPosition(), patch.getEndPosition()));
 		}
-		return foundPatches;
+		FilterResult<Patch> result = new FilterResult<Patch>(input.getText(), foundPatches, deletions);
+		FilterStatistics.getDefault().record("FilterPatches", sample, result);
+		return result;
 	}
-
 	
 	public String getOutputText() {
-		return textRemover.doDelete();
+		return lastResult.getOutputText();
 	}
 
 	public List<Patch> runFilter(String inputText) {
-		return getPatches(inputText);
+		lastResult = filter(inputText);
+		return new ArrayList<Patch>(lastResult.getElements());
 	}
 
 	public boolean isRelaxed() {
@@ -0,0 +1,77 @@
+/**
+ * FilterResult.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable result of running an {@link IReentrantFilter} on a text: the structural
+ * elements that were found, and the spans of the input text they occupy.
+ * @author Nicolas Bettenburg
+ *
+ * @param <T> the type of structural element
+ */
+public final class FilterResult<T> {
+
+	private final CharSequence inputText;
+	private final List<T> elements;
+	private final List<TextSpan> deletions;
+	private final boolean partial;
+	
+	public FilterResult(CharSequence inputText, List<T> elements, List<TextSpan> deletions) {
+		this(inputText, elements, deletions, false);
+	}
+	
+	/**
+	 * @param partial whether the filter stopped early, see {@link #isPartial()}
+	 */
+	public FilterResult(CharSequence inputText, List<T> elements, List<TextSpan> deletions, boolean partial) {
+		this.inputText = inputText;
+		this.elements = Collections.unmodifiableList(elements);
+		this.deletions = Collections.unmodifiableList(deletions);
+		this.partial = partial;
+	}
+
+	/**
+	 * @return the text the filter was run on
+	 */
+	public CharSequence getInputText() {
+		return inputText;
+	}
+
+	/**
+	 * @return the structural elements found by the filter
+	 */
+	public List<T> getElements() {
+		return elements;
+	}
+
+	/**
+	 * @return whether the filter ran out of its regular expression budget, so that it may have missed elements
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+	
+	/**
+	 * @return the spans of the input text that should be removed
+	 */
+	public List<TextSpan> getDeletions() {
+		return deletions;
+	}
+	
+	/**
+	 * Remove all deletion spans from the input text
+	 * @return the input text without the structural elements found by the filter
+	 */
+	public String getOutputText() {
+		FilterTextRemover textRemover = new FilterTextRemover(inputText.toString());
+		for (TextSpan span : deletions)
+			textRemover.markForDeletion(span.getStart(), span.getEnd());
+		return textRemover.doDelete();
+	}
+	
+}
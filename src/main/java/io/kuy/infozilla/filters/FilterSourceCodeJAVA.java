@@ -4,21 +4,18 @@
  */
 package io.kuy.infozilla.filters;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
-import com.Ostermiller.util.CSVParser;
-
 import io.kuy.infozilla.elements.sourcecode.java.CodeRegion;
 import io.kuy.infozilla.helpers.RegExHelper;
+import io.kuy.infozilla.helpers.RegexBudget;
 
 /**
  * The FilterSourceCodeJAVA class implements the IFilter interface for
@@ -26,16 +23,19 @@ import io.kuy.infozilla.helpers.RegExHelper;
  * @author Nicolas Bettenburg
  *
  */
-public class FilterSourceCodeJAVA implements IFilter{
+public class FilterSourceCodeJAVA implements IFilter, IReentrantFilter<CodeRegion> {
 	
 	/** Stores the codePatterns read from Java_CodeDB.txt */
-	private HashMap<String, Pattern> codePatterns;
+	private Map<String, Pattern> codePatterns;
 	
 	/** Stores the code pattern options, read from Java_CodeDB.txt */
-	private HashMap<String, String> codePatternOptions;
+	private Map<String, String> codePatternOptions;
+	
+	/** The database the patterns come from, null if there is none */
+	private JavaCodeDB codeDB;
 	
-	/** The classes own textRemover */
-	private FilterTextRemover textRemover;
+	/** The result of the last call to runFilter(), kept for getOutputText() */
+	private FilterResult<CodeRegion> lastResult;
 	
 	/**
 	 * Standard Constructor
@@ -50,10 +50,9 @@ public class FilterSourceCodeJAVA implements IFilter{
 	 * @param filename the name of the file to read Code Patterns from.
 	 */
 	public FilterSourceCodeJAVA(String filename) {
-		codePatterns = new HashMap<String, Pattern>();
-		codePatternOptions = new HashMap<String, String>();
+		this();
 		try {
-			readCodePatterns(filename);
+			useCodePatterns(JavaCodeDB.read(filename));
 		} catch(Exception e) {
 			System.err.println("Error while reading Java Source Code Patterns!");
 			e.printStackTrace();
@@ -65,36 +64,50 @@ public class FilterSourceCodeJAVA implements IFilter{
 	 * @param fileurl a URL to a file to read Code Patterns from.
 	 */
 	public FilterSourceCodeJAVA(URL fileurl) {
-		codePatterns = new HashMap<String, Pattern>();
-		codePatternOptions = new HashMap<String, String>();
-		try {
-			readCodePatterns(fileurl.openStream());
+		this();
+		try (InputStream instream = fileurl.openStream()) {
+			useCodePatterns(JavaCodeDB.read(instream));
 		} catch(Exception e) {
 			System.err.println("Error while reading Java Source Code Patterns!");
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Overloaded Constructor
+	 * @param codeDB an already compiled database of Code Patterns, see {@link JavaCodeDB#getDefault()}.
+	 */
+	public FilterSourceCodeJAVA(JavaCodeDB codeDB) {
+		useCodePatterns(codeDB);
+	}
+	
+	private void useCodePatterns(JavaCodeDB codeDB) {
+		codePatterns = codeDB.getCodePatterns();
+		codePatternOptions = codeDB.getCodePatternOptions();
+		this.codeDB = codeDB;
+	}
+	
 	/**
 	 * Get a List of Source Code Regions contained in a given Text {@link s}
 	 * @param s the Text we shall look inside for Source Code
+	 * @param budget the budget the searches count against
 	 * @return a List of Source Code Occurences as {@link CodeRegion}s
 	 */
-	private List<CodeRegion> getCodeRegions(final String s, boolean minimalSet) {
+	private List<CodeRegion> getCodeRegions(final CharSequence s, boolean minimalSet, RegexBudget budget) {
 		List<CodeRegion> codeRegions = new ArrayList<CodeRegion>();
 		// for each keyword-pattern pair find the corresponding occurences!
 		for (String keyword : codePatterns.keySet()) {
 			Pattern p = codePatterns.get(keyword);
 			String patternOptions = codePatternOptions.get(keyword);
 			if (patternOptions.contains("MATCH")) {
-				for (MatchResult r : RegExHelper.findMatches(p, s)) {
+				for (MatchResult r : RegExHelper.matches(p, s, budget)) {
 					int offset = findMatch(s,'{', '}', r.end());
-					CodeRegion foundRegion = new CodeRegion(r.start(),r.end() + offset, keyword, s.substring(r.start(), r.end() + offset));
+					CodeRegion foundRegion = new CodeRegion(r.start(),r.end() + offset, keyword, s.subSequence(r.start(), r.end() + offset).toString());
 					codeRegions.add(foundRegion);
 				}
 			}
 			else {
-				for (MatchResult r : RegExHelper.findMatches(p, s)) {
+				for (MatchResult r : RegExHelper.matches(p, s, budget)) {
 					CodeRegion foundRegion = new CodeRegion(r.start(),r.end(), keyword, r.group());
 					codeRegions.add(foundRegion);
 				}
@@ -112,11 +125,11 @@ public class FilterSourceCodeJAVA implements IFilter{
 	/**
 	 * findMatch() returns the offset where the next closing is found. If not found return 0
 	 */
-	private int findMatch(String where, char opening, char closing, int start) {
-		String region = where.substring(start);
+	private int findMatch(CharSequence where, char opening, char closing, int start) {
 		int level = 0;
 		int position = 0;
-		for (char c : region.toCharArray()) {
+		for (int i = start; i < where.length(); i++) {
+			char c = where.charAt(i);
 			position = position +1;
 			if (c == opening) level=level+1;
 			if (c == closing) {
@@ -127,68 +140,6 @@ public class FilterSourceCodeJAVA implements IFilter{
 		return 0;
 	}
 	
-	/**
-	 * Read in some Code Patterns from a file named {@link filename}
-	 * @param filename the full qualified filename from which to read the code patterns.
-	 * @throws Exception if there did something go wrong with I/O
-	 */
-	private void readCodePatterns(final String filename) throws Exception {
-		BufferedReader fileInput = new BufferedReader(new FileReader(filename));
-		// Read patterns from the file
-		String inputLine = null;
-		while ( (inputLine = fileInput.readLine())  != null ) {
-			// Input comes in the format: "keyword","PATTERN","OPTIONS"
-			// A line can be commented out by using //
-			if (!inputLine.substring(0, 2).equalsIgnoreCase("//")) {
-				// we use ostermillers CSV Parser for sake of ease
-				String[][] parsedLine = CSVParser.parse(inputLine);
-				String keyword = parsedLine[0][0];
-				String pattern = parsedLine[0][1];
-				// Check if we have some options
-				if (parsedLine[0].length == 3) {
-					String options = parsedLine[0][2];
-					codePatternOptions.put(keyword, options);
-				} else {
-					codePatternOptions.put(keyword, "");
-				}
-				Pattern somePattern = Pattern.compile(pattern);
-				codePatterns.put(keyword, somePattern);
-			}
-		}
-		fileInput.close();
-	}
-	
-	/**
-	 * Read in some Code Patterns from an input stream name {@link instream}
-	 * @param instream the input stream to read the code patterns from
-	 * @throws Exception if something goes wrong with I/O
-	 */
-	private void readCodePatterns(final InputStream instream) throws Exception {
-		BufferedReader fileInput = new BufferedReader(new InputStreamReader(instream));
-		// Read patterns from the file
-		String inputLine = null;
-		while ( (inputLine = fileInput.readLine())  != null ) {
-			// Input comes in the format: "keyword","PATTERN","OPTIONS"
-			// A line can be commented out by using //
-			if (!inputLine.substring(0, 2).equalsIgnoreCase("//")) {
-				// we use Ostermillers CSV Parser for sake of ease
-				String[][] parsedLine = CSVParser.parse(inputLine);
-				String keyword = parsedLine[0][0];
-				String pattern = parsedLine[0][1];
-				// Check if we have some options
-				if (parsedLine[0].length == 3) {
-					String options = parsedLine[0][2];
-					codePatternOptions.put(keyword, options);
-				} else {
-					codePatternOptions.put(keyword, "");
-				}
-				Pattern somePattern = Pattern.compile(pattern);
-				codePatterns.put(keyword, somePattern);
-			}
-		}
-	}
-	
-	
 	/**
 	 * Given a List of Code Regions transform that list to a minimal including set
 	 * @param regionList a List of Code Regions that should be minimized
@@ -220,25 +171,33 @@ public class FilterSourceCodeJAVA implements IFilter{
 	}
 
 	public String getOutputText() {
-		return textRemover.doDelete();
+		return lastResult.getOutputText();
 	}
 
 	public List<CodeRegion> runFilter(String inputText) {
-		// Initialize a TextRemover
-		textRemover = new FilterTextRemover(inputText);
-		
+		lastResult = filter(inputText);
+		return new ArrayList<CodeRegion>(lastResult.getElements());
+	}
+	
+	public FilterResult<CodeRegion> filter(FilterInput input) {
+		FilterStatistics.Sample sample = FilterStatistics.getDefault().start();
+		CharSequence inputText = input.getText();
+		RegexBudget budget = input.getRegexBudget();
+		budget.startFilter();
 		// Find all Code Regions in the given Text inputText - by default we want the minimal set
 		// which means the outer most syntactical elements spanning all the discovered code.
-		List<CodeRegion> codeRegions = getCodeRegions(inputText, true);
+		List<CodeRegion> codeRegions = (codeDB != null && !codeDB.mayMatch(input.getFeatures()))
+				? new ArrayList<CodeRegion>() : getCodeRegions(inputText, true, budget);
 		
 		// Mark the found Regions for deletion
+		List<TextSpan> deletions = new ArrayList<TextSpan>();
 		for (CodeRegion region : codeRegions)
-			textRemover.markForDeletion(region.start, region.end);
+			deletions.add(new TextSpan(region.start, region.end));
 		
 		// Return the found source code regions
-		return codeRegions;
+		FilterResult<CodeRegion> result = new FilterResult<CodeRegion>(inputText, codeRegions, deletions, budget.isExceeded());
+		FilterStatistics.getDefault().record("FilterSourceCodeJAVA", sample, result);
+		return result;
 	}
 	
 }
-
-	
\ No newline at end of file
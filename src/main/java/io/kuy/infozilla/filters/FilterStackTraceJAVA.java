@@ -5,17 +5,35 @@
 package io.kuy.infozilla.filters;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import io.kuy.infozilla.elements.stacktrace.java.StackFrame;
 import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
 import io.kuy.infozilla.helpers.RegExHelper;
+import io.kuy.infozilla.helpers.RegexBudget;
 
-public class FilterStackTraceJAVA implements IFilter{
+public class FilterStackTraceJAVA implements IFilter, IReentrantFilter<StackTrace> {
 	
-	private FilterTextRemover textRemover;
+	/** The result of the last call to runFilter(), kept for getOutputText() */
+	private FilterResult<StackTrace> lastResult;
+	
+	/** Whether traces are found by the {@link JavaStackTraceLexer} instead of the regular expressions */
+	private boolean lexer = false;
+	
+	public FilterStackTraceJAVA() {
+	}
+	
+	/**
+	 * @param lexer true to find traces with the linear time {@link JavaStackTraceLexer},
+	 * 		false to use the regular expressions
+	 */
+	public FilterStackTraceJAVA(boolean lexer) {
+		this.lexer = lexer;
+	}
 	
 	// Define a reusable Regular Expression for finding Java Stack Traces
 	public static String JAVA_EXCEPTION = "^(([\\w<>\\$_]+\\.)+[\\w<>\\$_]+(Error|Exception){1}(\\s|:))";
@@ -25,59 +43,81 @@ public class FilterStackTraceJAVA implements IFilter{
 	public static String JAVA_STACKTRACE = JAVA_EXCEPTION + JAVA_REASON + JAVA_TRACE;
 	private static Pattern pattern_stacktrace_java = Pattern.compile(JAVA_STACKTRACE,  Pattern.DOTALL | Pattern.MULTILINE);
 	private static Pattern pattern_cause_java = Pattern.compile(JAVA_CAUSE, Pattern.DOTALL | Pattern.MULTILINE);
+	private static Pattern pattern_exception_java = Pattern.compile(JAVA_EXCEPTION, Pattern.DOTALL | Pattern.MULTILINE);
 	
+	/** How many lines an exception has to be away from the last starting point to start a region of its own */
+	private static final int MIN_REGION_LINES = 20;
+	
+	// Patterns used to split a single match into exception, reason and frames
+	// This Pattern has:       GROUP 1     GROUP 2   GROUP 3
+	private static final String CAUSE_EXCEPTION = "(Caused by:)(.*?(Error|Exception){1})(.*?)(at\\s+([\\w<>\\$_\n\r]+\\.)+[\\w<>\\$_\n\r]+\\s*\\(.+?\\.java(:)?(\\d+)?\\)(\\s*?at\\s+([\\w<>\\$_\\s]+\\.)+[\\w<>\\$_\\s]+\\s*\\(.+?\\.java(:)?(\\d+)?\\))*)";
+	private static final String CAUSE_FRAMES = "(^\\s*?at\\s+(([\\w<>\\$_\n\r]+\\.)+[\\w<>\\$_\n\r]+\\s*\\(.*?\\)$))";
+	// This Pattern has:       GROUP 1 = exception  GROUP 4 = reason  GROUP 5 = frames
+	private static final String TRACE_EXCEPTION = "(([\\w<>\\$_]+\\.)+[\\w<>\\$_]+(Error|Exception){1})(.*?)(at\\s+([\\w<>\\$_\n\r]+\\.)+[\\w<>\\$_\n\r]+\\s*\\(.+?\\.java(:)?(\\d+)?\\)(\\s*?at\\s+([\\w<>\\$_\\s]+\\.)+[\\w<>\\$_\\s]+\\s*\\(.+?\\.java(:)?(\\d+)?\\))*)";
+	private static final String TRACE_FRAMES = "(^\\s*?at\\s+(([\\w<>\\$_\\s]+\\.)+[\\w<>\\$_\\s]+\\s*\\(.*?\\)$))";
+	private static final Pattern pattern_cause_exception = Pattern.compile(CAUSE_EXCEPTION, Pattern.DOTALL | Pattern.MULTILINE);
+	private static final Pattern pattern_cause_frames = Pattern.compile(CAUSE_FRAMES, Pattern.DOTALL | Pattern.MULTILINE);
+	private static final Pattern pattern_trace_exception = Pattern.compile(TRACE_EXCEPTION, Pattern.DOTALL | Pattern.MULTILINE);
+	private static final Pattern pattern_trace_frames = Pattern.compile(TRACE_FRAMES, Pattern.DOTALL | Pattern.MULTILINE);
 	
 	/**
 	 * Find StackTraces or Causes that match against our exhaustive patterns
 	 * @param s The CharSequence to look in for Stack Traces or Causes
-	 * @return A list of Matches
+	 * @param start The start of the region of s to look in
+	 * @param end The exclusive end of the region of s to look in
+	 * @param budget the budget the searches count against
+	 * @return The Matches of the trace pattern followed by those of the cause pattern,
+	 * 		each searched for only when the iteration gets to it
 	 */
-	private List<MatchResult> findStackTraces(CharSequence s) {
-		List<MatchResult> stacktraces = new ArrayList<MatchResult>();
-		
-		for (MatchResult r : RegExHelper.findMatches(pattern_stacktrace_java, s)) {
-			stacktraces.add(r);			
-		}
-		
-		for (MatchResult r: RegExHelper.findMatches(pattern_cause_java, s)) {
-			stacktraces.add(r);
-		}
-		return stacktraces;
+	private Iterable<MatchResult> findStackTraces(final CharSequence s, final int start, final int end, final RegexBudget budget) {
+		return new Iterable<MatchResult>() {
+			public Iterator<MatchResult> iterator() {
+				return new Iterator<MatchResult>() {
+					private Iterator<MatchResult> current = RegExHelper.matches(pattern_stacktrace_java, s, start, end, budget).iterator();
+					private boolean causes = false;
+					
+					public boolean hasNext() {
+						if (!causes && !current.hasNext()) {
+							current = RegExHelper.matches(pattern_cause_java, s, start, end, budget).iterator();
+							causes = true;
+						}
+						return current.hasNext();
+					}
+					
+					public MatchResult next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						return current.next();
+					}
+				};
+			}
+		};
 	}
 	
 	/**
 	 * This method is used to create an StackTrace object given its String representation.
 	 * @param stackTraceMatchGroup the String representing a StrackTrace Cause.
 	 * 		This usually comes from a RegExHelper matches' group() operation! 
+	 * @param budget the budget the searches count against
 	 * @return a StackTrace as represented by the given String 
 	 */
-	private StackTrace createCause(String stackTraceMatchGroup) {
+	private StackTrace createCause(String stackTraceMatchGroup, RegexBudget budget) {
 		String exception = "";
 		String reason = "";
-		List<String> foundFrames = new ArrayList<String>();
-		
-		// This Pattern has:       GROUP 1     GROUP 2   GROUP 3
-		String causeException = "(Caused by:)(.*?(Error|Exception){1})(.*?)(at\\s+([\\w<>\\$_\n\r]+\\.)+[\\w<>\\$_\n\r]+\\s*\\(.+?\\.java(:)?(\\d+)?\\)(\\s*?at\\s+([\\w<>\\$_\\s]+\\.)+[\\w<>\\$_\\s]+\\s*\\(.+?\\.java(:)?(\\d+)?\\))*)";
-		Pattern causeEPattern = Pattern.compile(causeException, Pattern.DOTALL | Pattern.MULTILINE);
+		List<StackFrame> foundFrames = new ArrayList<StackFrame>();
 		
 		// Find the Exception of this cause (which is group 2 of causeEPattern)
-		Matcher exceptionMatcher = causeEPattern.matcher(stackTraceMatchGroup);
-		if (exceptionMatcher.find()) {
-			MatchResult matchResult = exceptionMatcher.toMatchResult();
-			
+		MatchResult matchResult = RegExHelper.findFirst(pattern_cause_exception, stackTraceMatchGroup, budget);
+		if (matchResult != null) {
 			exception = matchResult.group(2).trim();
 			reason = matchResult.group(4).trim();
 			
-			// look at the frames
-			String regexFrames = "(^\\s*?at\\s+(([\\w<>\\$_\n\r]+\\.)+[\\w<>\\$_\n\r]+\\s*\\(.*?\\)$))";
-			Pattern patternFrames = Pattern.compile(regexFrames, Pattern.DOTALL | Pattern.MULTILINE);
-			
 			// Find all frames (without the preceeding "at" )
-			for (MatchResult framesMatch : RegExHelper.findMatches(patternFrames, matchResult.group(5)))
-				foundFrames.add(framesMatch.group(2).replaceAll("[\n\r]", ""));				
+			for (MatchResult framesMatch : RegExHelper.matches(pattern_cause_frames, matchResult.group(5), budget))
+				foundFrames.add(StackFrame.parse(framesMatch.group(2)));				
 		}
 		// create a Stacktrace
-		StackTrace trace = new StackTrace(exception, reason, foundFrames);
+		StackTrace trace = new StackTrace(exception, reason, foundFrames.toArray(new StackFrame[foundFrames.size()]));
 		trace.setCause(true);
 		
 		return(trace);
@@ -87,36 +127,26 @@ public class FilterStackTraceJAVA implements IFilter{
 	 * This method is used to create an StackTrace object given its String representation.
 	 * @param stackTraceMatchGroup the String representing a StrackTrace.
 	 * 		This usually comes from a RegExHelper matches' group() operation! 
+	 * @param budget the budget the searches count against
 	 * @return a StackTrace as represented by the given String 
 	 */
-	private StackTrace createTrace(String stackTraceMatchGroup) {
+	private StackTrace createTrace(String stackTraceMatchGroup, RegexBudget budget) {
 		String exception = "";
 		String reason = "";
-		List<String> foundFrames = new ArrayList<String>();
-		
-		// This Pattern has:       GROUP 1 = exception  GROUP 4 = reason  GROUP 5 = frames
-		String traceException = "(([\\w<>\\$_]+\\.)+[\\w<>\\$_]+(Error|Exception){1})(.*?)(at\\s+([\\w<>\\$_\n\r]+\\.)+[\\w<>\\$_\n\r]+\\s*\\(.+?\\.java(:)?(\\d+)?\\)(\\s*?at\\s+([\\w<>\\$_\\s]+\\.)+[\\w<>\\$_\\s]+\\s*\\(.+?\\.java(:)?(\\d+)?\\))*)";
-		Pattern tracePattern = Pattern.compile(traceException, Pattern.DOTALL | Pattern.MULTILINE);
-		
+		List<StackFrame> foundFrames = new ArrayList<StackFrame>();
 		
 		// Find the Exception of this cause (which is group 2 of causeEPattern)
-		Matcher exceptionMatcher = tracePattern.matcher(stackTraceMatchGroup);
-		if (exceptionMatcher.find()) {
-			MatchResult matchResult = exceptionMatcher.toMatchResult();
-		
+		MatchResult matchResult = RegExHelper.findFirst(pattern_trace_exception, stackTraceMatchGroup, budget);
+		if (matchResult != null) {
 			exception = matchResult.group(1).trim();
 			reason = matchResult.group(4).trim();
 		
-		// look at the frames
-		String regexFrames = "(^\\s*?at\\s+(([\\w<>\\$_\\s]+\\.)+[\\w<>\\$_\\s]+\\s*\\(.*?\\)$))";
-		Pattern patternFrames = Pattern.compile(regexFrames, Pattern.DOTALL | Pattern.MULTILINE);
-		
 		// Find all frames (without the preceeding "at" )
-		for (MatchResult framesMatch : RegExHelper.findMatches(patternFrames, matchResult.group(5)))
-			foundFrames.add(framesMatch.group(2).replaceAll("[\n\r]", ""));				
+		for (MatchResult framesMatch : RegExHelper.matches(pattern_trace_frames, matchResult.group(5), budget))
+			foundFrames.add(StackFrame.parse(framesMatch.group(2)));				
 		}
 		// create a Stacktrace
-		StackTrace trace = new StackTrace(exception, reason, foundFrames);
+		StackTrace trace = new StackTrace(exception, reason, foundFrames.toArray(new StackFrame[foundFrames.size()]));
 		trace.setCause(false);
 		
 		return(trace); 
@@ -125,83 +155,48 @@ public class FilterStackTraceJAVA implements IFilter{
 	/**
 	 * Get a List of StackTraces that are inside the Text s
 	 * @param inputSequence A CharSequence containing the Text to look for Stack Traces in
+	 * @param deletions A List the spans of all found Stack Traces are added to
+	 * @param budget the budget all searches count against
 	 * @return A List of StackTraces
 	 */
-	private List<StackTrace> getStackTraces(CharSequence inputSequence) {
+	private List<StackTrace> getStackTraces(CharSequence inputSequence, List<TextSpan> deletions, RegexBudget budget) {
 		List<StackTrace> stackTraces = new ArrayList<StackTrace>();
 		
 		// Split the text sequence first by possible exception start otherwise
 		// multiline patterns will run FOREVER!
 		
-		int[] possibleStart = findExceptions(inputSequence);
+		int[] possibleStart = findExceptions(inputSequence, budget);
 		
-		for (int i=0; i < possibleStart.length -1; i++) {
+		for (int i=0; i < possibleStart.length; i++) {
+			// Every region but the last one ends right before the next exception,
+			// and a trace in it takes the line break that follows it along
+			boolean last = (i == possibleStart.length - 1);
+			int regionEnd = last ? inputSequence.length() : possibleStart[i+1] -1;
+			int lineBreak = last ? 0 : 1;
 			
-			CharSequence region = inputSequence.subSequence(possibleStart[i], possibleStart[i+1] -1);
-			List<MatchResult> matches = findStackTraces(region);
-			
-			for (MatchResult match : matches) {
+			for (MatchResult match : findStackTraces(inputSequence, possibleStart[i], regionEnd, budget)) {
 				String matchText = match.group();
 				
-				// Mark this Stack Trace match for deletion
-				int traceStart = inputSequence.toString().indexOf(matchText);
-				int traceEnd = traceStart + matchText.length() + 1;
-				textRemover.markForDeletion(traceStart, traceEnd);
-				if (traceStart == 0 && traceEnd == 0)
-					System.out.println("Critical Error in Stacktrace Filter! Could not find start and End!");
 				// Check if it is a cause or not
-				if (matchText.trim().startsWith("Caused by:")) {
-					// Create a cause
-					StackTrace cause = createCause(matchText);
-					// Add it to the List of Stack Traces
-					cause.setTraceStart(traceStart);
-					cause.setTraceEnd(traceEnd);
-					stackTraces.add(cause);
-					
-				} else {
-					// Create a trace
-					StackTrace trace = createTrace(matchText);
-					// Add it to the List of Stack Traces
-					trace.setTraceStart(traceStart);
-					trace.setTraceEnd(traceEnd);
-					stackTraces.add(trace);
-				}
-			}
-		}
-		
-		// And for the last region, too !!!!!!!!!!!!!!!!!!!!!!!!!!!!
-		if (possibleStart.length > 0) {
-			
-			CharSequence region = inputSequence.subSequence(possibleStart[possibleStart.length-1], inputSequence.length());
-			List<MatchResult> matches = findStackTraces(region);
-			
-			for (MatchResult match : matches) {
-				String matchText = match.group();
+				StackTrace trace;
+				if (matchText.trim().startsWith("Caused by:"))
+					trace = createCause(matchText, budget);
+				else
+					trace = createTrace(matchText, budget);
 				
-				// Mark this Stack Trace match for deletion
-				int traceStart = inputSequence.toString().lastIndexOf(matchText);
-				int traceEnd = traceStart + matchText.length();
-				textRemover.markForDeletion(traceStart, traceEnd);
-				if (traceStart == 0 && traceEnd == 0)
-					System.out.println("Critical Error in Stacktrace Filter! Could not find start and End!");
+				// A trace the budget ran out on may miss its exception or frames, so its text stays where it is
+				if (budget.isExceeded())
+					break;
 				
-				// Check if it is a cause or not
-				if (matchText.trim().startsWith("Caused by:")) {
-					// Create a cause
-					StackTrace cause = createCause(matchText);
-					// Add it to the List of Stack Traces
-					cause.setTraceStart(traceStart);
-					cause.setTraceEnd(traceEnd);
-					stackTraces.add(cause);
-					
-				} else {
-					// Create a trace
-					StackTrace trace = createTrace(matchText);
-					// Add it to the List of Stack Traces
-					trace.setTraceStart(traceStart);
-					trace.setTraceEnd(traceEnd);
-					stackTraces.add(trace);
-				}
+				// Mark this Stack Trace match for deletion, the match knows where it is in the text
+				int traceStart = match.start();
+				int traceEnd = match.end() + lineBreak;
+				deletions.add(new TextSpan(traceStart, traceEnd));
+				
+				// Add it to the List of Stack Traces
+				trace.setTraceStart(traceStart);
+				trace.setTraceEnd(traceEnd);
+				stackTraces.add(trace);
 			}
 		}
 		
@@ -212,29 +207,50 @@ public class FilterStackTraceJAVA implements IFilter{
 	/**
 	 * Find a list of starting points of x.y.zException or x.y.zError
 	 * @param s The CharSequence to look inside for such starting points
+	 * @param budget the budget the search counts against
 	 * @return an array of possible starting points
 	 */
-	private final int[] findExceptions(CharSequence s) {
+	private final int[] findExceptions(CharSequence s, RegexBudget budget) {
 		List<Integer> exceptionList = new ArrayList<Integer>();
 		
-		// We match against our well known JAVA_EXCEPTION Pattern that denotes a start of an exception or error
-		Pattern exceptionPattern = Pattern.compile(JAVA_EXCEPTION, Pattern.DOTALL | Pattern.MULTILINE);
+		// The lines since the last starting point are counted while we go, every character is looked at once.
+		// They are counted like String.split("[\n\r]") would: the line breaks, plus one,
+		// minus the line breaks at the very end, and none at all if there is nothing but line breaks.
+		int scanned = 0;
+		int lineBreaks = 0;
+		int trailingBreaks = 0;
+		boolean hasText = false;
 		
+		// We match against our well known JAVA_EXCEPTION Pattern that denotes a start of an exception or error
 		// For every match we want to add the start of that match to the list of possible starting points
-		for (MatchResult r : RegExHelper.findMatches(exceptionPattern, s)) {
+		for (MatchResult r : RegExHelper.matches(pattern_exception_java, s, budget)) {
 			
 			// If there have previously been some starting points
 			if (exceptionList.size() > 0){
+				for (; scanned < r.start(); scanned++) {
+					char c = s.charAt(scanned);
+					if (c == '\n' || c == '\r') {
+						lineBreaks++;
+						trailingBreaks++;
+					} else {
+						hasText = true;
+						trailingBreaks = 0;
+					}
+				}
+				int lines = (lineBreaks == 0) ? 1 : (hasText ? lineBreaks + 1 - trailingBreaks : 0);
+				
 				// See if this new starting points is at least 20 lines away from the old one
 				// Sometimes the reason contains another Exception in the first 5 lines
 				// In this case we would otherwise omit the root exception but take the exception stated in Reason as root!
-				String newRegion = s.subSequence(exceptionList.get(exceptionList.size()-1), r.start()).toString();
-				if ( newRegion.split("[\n\r]").length >= 20)
-					exceptionList.add(Integer.valueOf(r.start()));
-			} else {
-				// If there had been no starting points before just add one to start with
-				exceptionList.add(Integer.valueOf(r.start()));
+				if (lines < MIN_REGION_LINES)
+					continue;
 			}
+			// Add the starting point, the first one is always taken to start with
+			exceptionList.add(Integer.valueOf(r.start()));
+			scanned = r.start();
+			lineBreaks = 0;
+			trailingBreaks = 0;
+			hasText = false;
 		}
 		
 		// If no region is found then go and try the whole text for exhaustive search
@@ -251,20 +267,48 @@ public class FilterStackTraceJAVA implements IFilter{
 
 	// Auto-generated Message from IFilter interface
 	public String getOutputText() {
-		return textRemover.doDelete();
+		return lastResult.getOutputText();
 	}
 
 	// Auto-generated Message from IFilter interface
 	public List<StackTrace> runFilter(String inputText) {
-		// Initialize TextRemover
-		textRemover = new FilterTextRemover(inputText);
-		// Get a Bunch of Stack Traces
-		List<StackTrace> foundStackTraces = getStackTraces(inputText);
-		
-		// Do the removal in the textRemover
-		// ==> This is already done in getStackTraces when a MatchResult is present!
+		lastResult = filter(inputText);
+		return new ArrayList<StackTrace>(lastResult.getElements());
+	}
+	
+	public FilterResult<StackTrace> filter(FilterInput input) {
+		FilterStatistics.Sample sample = FilterStatistics.getDefault().start();
+		CharSequence inputText = input.getText();
+		RegexBudget budget = input.getRegexBudget();
+		budget.startFilter();
+		// Get a Bunch of Stack Traces, their spans are collected while we go
+		List<TextSpan> deletions = new ArrayList<TextSpan>();
+		List<StackTrace> foundStackTraces;
+		if (!input.getFeatures().mayContainJavaTraces())
+			foundStackTraces = new ArrayList<StackTrace>();
+		else if (usesLexer())
+			foundStackTraces = JavaStackTraceLexer.findStackTraces(input.getLineIndex(), deletions);
+		else
+			foundStackTraces = getStackTraces(inputText, deletions, budget);
+
+		// Causes share the frames they have in common with the trace they belong to, the lexer links them itself
+		if (!usesLexer())
+			CauseChains.link(foundStackTraces, inputText);
 		
 		// And return the found Stack Traces
-		return foundStackTraces;
+		FilterResult<StackTrace> result = new FilterResult<StackTrace>(inputText, foundStackTraces, deletions, budget.isExceeded());
+		FilterStatistics.getDefault().record(getStageName(), sample, result);
+		return result;
+	}
+	
+	public boolean usesLexer() {
+		return lexer;
+	}
+	
+	/**
+	 * @return the name the filter records its {@link FilterStatistics} under
+	 */
+	String getStageName() {
+		return lexer ? "JavaStackTraceLexer" : "FilterStackTraceJAVA";
 	}
 }
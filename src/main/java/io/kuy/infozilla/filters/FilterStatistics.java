@@ -0,0 +1,425 @@
+/**
+ * FilterStatistics.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects how much every invocation of a filter costs: wall time, CPU time, bytes allocated,
+ * the length of its input and the number of elements it found. The invocations are aggregated
+ * per stage into histograms, which can be read at any time with {@link #snapshot()}. All filters
+ * record into {@link #getDefault()}, no matter whether they run in a {@link FilterChain} or a
+ * {@link FilterChainEngine}. How many characters a stage removed is recorded by the chain, since
+ * only the chain knows which elements it cuts out of its text. Recording is disabled by default
+ * and then costs a single check per invocation.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class FilterStatistics {
+
+	private static final FilterStatistics DEFAULT = new FilterStatistics();
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private volatile boolean enabled = false;
+
+	private final ConcurrentHashMap<String, Recorder> stages = new ConcurrentHashMap<String, Recorder>();
+
+	/**
+	 * @return the statistics all filters record into
+	 */
+	public static FilterStatistics getDefault() {
+		return DEFAULT;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Start or stop recording. Statistics that were already recorded are kept.
+	 * @param enabled whether filter invocations should be recorded
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Forget all statistics recorded so far.
+	 */
+	public void reset() {
+		stages.clear();
+	}
+
+	/**
+	 * Start measuring a filter invocation on the current thread.
+	 * @return the measurement to pass to record(), or null if recording is disabled
+	 */
+	public Sample start() {
+		if (!enabled)
+			return null;
+		return new Sample();
+	}
+
+	/**
+	 * Finish measuring a filter invocation and record it.
+	 * @param stage the name of the filter
+	 * @param sample what start() returned on the same thread, nothing is recorded if it is null
+	 * @param inputLength the length of the text the filter ran on
+	 * @param elements the number of elements the filter found
+	 * @param removedChars the number of characters the filter removed from the text, -1 if it is not known
+	 */
+	public void record(String stage, Sample sample, int inputLength, int elements, int removedChars) {
+		if (sample == null)
+			return;
+		long wallNanos = System.nanoTime() - sample.wallStart;
+		long cpuNanos = sample.cpuStart < 0 ? -1 : currentThreadCpuTime() - sample.cpuStart;
+		long allocatedBytes = sample.allocatedStart < 0 ? -1 : currentThreadAllocatedBytes() - sample.allocatedStart;
+
+		Recorder recorder = stages.computeIfAbsent(stage, name -> new Recorder());
+		recorder.wallNanos.add(wallNanos);
+		recorder.cpuNanos.add(cpuNanos);
+		recorder.allocatedBytes.add(allocatedBytes);
+		recorder.inputChars.add(inputLength);
+		recorder.elements.add(elements);
+		recorder.removedChars.add(removedChars);
+	}
+
+	/**
+	 * Finish measuring a filter invocation and record it, taking the number of elements from
+	 * the result of the filter. Whether its deletions are removed is up to the chain.
+	 */
+	public void record(String stage, Sample sample, FilterResult<?> result) {
+		if (sample == null)
+			return;
+		record(stage, sample, result.getInputText().length(), result.getElements().size(), -1);
+	}
+
+	/**
+	 * Record how many characters a filter chain removed from its text for a stage.
+	 * @param stage the name of the filter
+	 * @param removedChars the number of characters removed
+	 */
+	public void recordRemoved(String stage, int removedChars) {
+		if (!enabled)
+			return;
+		stages.computeIfAbsent(stage, name -> new Recorder()).removedChars.add(removedChars);
+	}
+
+	/**
+	 * Record how many characters a filter chain removed from the text of a stage.
+	 * @param stage the name of the filter
+	 * @param spans the spans the chain removed, in the coordinates of the text of the stage
+	 * @param length the length of the text of the stage
+	 */
+	public void recordRemoved(String stage, List<TextSpan> spans, int length) {
+		if (!enabled)
+			return;
+		recordRemoved(stage, coveredLength(spans, length));
+	}
+
+	/**
+	 * Record how many characters a filter chain removed by going on with the output of a stage.
+	 * @param stage the name of the filter
+	 * @param text the text the stage ran on
+	 * @param output the output text of the stage
+	 * @return the output text
+	 */
+	String recordOutput(String stage, String text, String output) {
+		recordRemoved(stage, text.length() - output.length());
+		return output;
+	}
+
+	/**
+	 * Count the characters of a text covered by a list of possibly overlapping spans.
+	 */
+	private static int coveredLength(List<TextSpan> spans, int length) {
+		List<TextSpan> sorted = new ArrayList<TextSpan>(spans);
+		Collections.sort(sorted, (a, b) -> Integer.compare(a.getStart(), b.getStart()));
+		int covered = 0;
+		int coveredUntil = 0;
+		for (TextSpan span : sorted) {
+			int start = Math.max(span.getStart(), coveredUntil);
+			int end = Math.min(span.getEnd(), length);
+			if (end > start) {
+				covered += end - start;
+				coveredUntil = end;
+			}
+		}
+		return covered;
+	}
+
+	/**
+	 * @return the statistics of all stages recorded so far, by the name of the stage
+	 */
+	public Map<String, StageStatistics> snapshot() {
+		Map<String, StageStatistics> result = new TreeMap<String, StageStatistics>();
+		for (Map.Entry<String, Recorder> entry : stages.entrySet())
+			result.put(entry.getKey(), entry.getValue().snapshot(entry.getKey()));
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Print a table with one line per stage: the number of invocations, the total and some
+	 * percentiles of the wall time, the total CPU time and allocations, and the totals of the
+	 * characters read, elements found and characters removed.
+	 * @param out where to print the table
+	 */
+	public void printReport(PrintStream out) {
+		out.println(String.format("%-22s %8s %10s %9s %9s %9s %10s %10s %12s %9s %12s",
+				"stage", "calls", "wall ms", "p50 us", "p99 us", "max us", "cpu ms", "alloc MB",
+				"input chars", "elements", "removed"));
+		for (StageStatistics stage : snapshot().values()) {
+			out.println(String.format("%-22s %8d %10.1f %9d %9d %9d %10s %10s %12d %9d %12d",
+					stage.getName(), stage.getInvocations(),
+					stage.getWallNanos().getSum() / 1e6,
+					stage.getWallNanos().getPercentile(0.5) / 1000,
+					stage.getWallNanos().getPercentile(0.99) / 1000,
+					stage.getWallNanos().getMax() / 1000,
+					stage.getCpuNanos().getCount() == 0 ? "n/a" : String.format("%.1f", stage.getCpuNanos().getSum() / 1e6),
+					stage.getAllocatedBytes().getCount() == 0 ? "n/a" : String.format("%.1f", stage.getAllocatedBytes().getSum() / 1048576.0),
+					stage.getInputChars().getSum(), stage.getElements().getSum(), stage.getRemovedChars().getSum()));
+		}
+	}
+
+	private static long currentThreadCpuTime() {
+		if (!THREADS.isCurrentThreadCpuTimeSupported() || !THREADS.isThreadCpuTimeEnabled())
+			return -1;
+		return THREADS.getCurrentThreadCpuTime();
+	}
+
+	private static long currentThreadAllocatedBytes() {
+		if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * The start of a measurement, taken on the thread that runs the filter.
+	 */
+	public static final class Sample {
+		private final long wallStart;
+		private final long cpuStart;
+		private final long allocatedStart;
+
+		private Sample() {
+			this.allocatedStart = currentThreadAllocatedBytes();
+			this.cpuStart = currentThreadCpuTime();
+			this.wallStart = System.nanoTime();
+		}
+	}
+
+	/**
+	 * The statistics of one stage, as of the time of the snapshot.
+	 */
+	public static final class StageStatistics {
+		private final String name;
+		private final Histogram wallNanos;
+		private final Histogram cpuNanos;
+		private final Histogram allocatedBytes;
+		private final Histogram inputChars;
+		private final Histogram elements;
+		private final Histogram removedChars;
+
+		private StageStatistics(String name, Histogram wallNanos, Histogram cpuNanos, Histogram allocatedBytes,
+				Histogram inputChars, Histogram elements, Histogram removedChars) {
+			this.name = name;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.inputChars = inputChars;
+			this.elements = elements;
+			this.removedChars = removedChars;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return how often the stage ran
+		 */
+		public long getInvocations() {
+			return wallNanos.getCount();
+		}
+
+		public Histogram getWallNanos() {
+			return wallNanos;
+		}
+
+		/**
+		 * @return the CPU time per invocation, empty if the JVM cannot measure it
+		 */
+		public Histogram getCpuNanos() {
+			return cpuNanos;
+		}
+
+		/**
+		 * @return the bytes allocated per invocation, empty if the JVM cannot measure them
+		 */
+		public Histogram getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public Histogram getInputChars() {
+			return inputChars;
+		}
+
+		public Histogram getElements() {
+			return elements;
+		}
+
+		public Histogram getRemovedChars() {
+			return removedChars;
+		}
+	}
+
+	/**
+	 * A histogram of non-negative values with one bucket per power of two: bucket 0 holds
+	 * the value 0 and bucket i the values from 2^(i-1) to 2^i - 1.
+	 */
+	public static final class Histogram {
+		public static final int BUCKETS = 64;
+
+		private final long[] buckets;
+		private final long count;
+		private final long sum;
+		private final long min;
+		private final long max;
+
+		private Histogram(long[] buckets, long count, long sum, long min, long max) {
+			this.buckets = buckets;
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+		}
+
+		static int bucketOf(long value) {
+			return 64 - Long.numberOfLeadingZeros(value);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return the smallest value, or 0 if there are none
+		 */
+		public long getMin() {
+			return count == 0 ? 0 : min;
+		}
+
+		/**
+		 * @return the largest value, or 0 if there are none
+		 */
+		public long getMax() {
+			return count == 0 ? 0 : max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @param bucket the number of the bucket, from 0 to BUCKETS - 1
+		 * @return the number of values in that bucket
+		 */
+		public long getBucketCount(int bucket) {
+			return buckets[bucket];
+		}
+
+		/**
+		 * Estimate a percentile by the upper bound of the bucket it falls into.
+		 * @param fraction the percentile as a number between 0 and 1, such as 0.99
+		 * @return a value that at least this fraction of the values is not larger than, or 0 if there are none
+		 */
+		public long getPercentile(double fraction) {
+			if (count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets[i];
+				if (seen >= rank) {
+					long upperBound = i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+					return Math.max(min, Math.min(max, upperBound));
+				}
+			}
+			return max;
+		}
+
+		public String toString() {
+			return "count=" + count + " sum=" + sum + " min=" + getMin() + " p50=" + getPercentile(0.5)
+				+ " p99=" + getPercentile(0.99) + " max=" + getMax();
+		}
+	}
+
+	/**
+	 * The thread safe, live counterpart of a Histogram.
+	 */
+	private static final class Distribution {
+		private final AtomicLongArray buckets = new AtomicLongArray(Histogram.BUCKETS);
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+		/**
+		 * Add a value. Negative values stand for measurements the JVM does not support and are ignored.
+		 */
+		void add(long value) {
+			if (value < 0)
+				return;
+			buckets.incrementAndGet(Histogram.bucketOf(value));
+			sum.add(value);
+			min.accumulateAndGet(value, Math::min);
+			max.accumulateAndGet(value, Math::max);
+		}
+
+		Histogram snapshot() {
+			long[] counts = new long[Histogram.BUCKETS];
+			long total = 0;
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			// Use the bucket counts as the count, so that percentiles stay consistent with them
+			return new Histogram(counts, total, sum.sum(), min.get(), max.get());
+		}
+	}
+
+	private static final class Recorder {
+		final Distribution wallNanos = new Distribution();
+		final Distribution cpuNanos = new Distribution();
+		final Distribution allocatedBytes = new Distribution();
+		final Distribution inputChars = new Distribution();
+		final Distribution elements = new Distribution();
+		final Distribution removedChars = new Distribution();
+
+		StageStatistics snapshot(String name) {
+			return new StageStatistics(name, wallNanos.snapshot(), cpuNanos.snapshot(), allocatedBytes.snapshot(),
+					inputChars.snapshot(), elements.snapshot(), removedChars.snapshot());
+		}
+	}
+
+}
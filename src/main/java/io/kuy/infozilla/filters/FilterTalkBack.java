@@ -5,7 +5,9 @@
 package io.kuy.infozilla.filters;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,18 +15,119 @@ import java.util.regex.Pattern;
 import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackEntry;
 import io.kuy.infozilla.elements.stacktrace.talkback.TalkbackTrace;
 import io.kuy.infozilla.helpers.RegExHelper;
+import io.kuy.infozilla.helpers.RegexBudget;
 
-public class FilterTalkBack implements IFilter {
+public class FilterTalkBack implements IFilter, IReentrantFilter<TalkbackTrace> {
 
-	private FilterTextRemover textRemover;
+	/** The result of the last call to runFilter(), kept for getOutputText() */
+	private FilterResult<TalkbackTrace> lastResult;
+	
+	private static final String classmethodline = "([ \\n\\r]*(?:.*)(?:::)(?:.*)[ \\n\\r]*\\[.*?,?[ \\n\\r]*line[ \\n\\r]*[0-9]+\\])";
+	private static final String methodline = "(?:[ \\n\\r]*.*[ \\n\\r]*\\[.*?,?[ \\n\\r]*line[ \\n\\r]*[0-9]+\\])";
+	private static final String methodcallline = "([ \\n\\r]*[^ ]*?\\(\\)[ ]*[\\n\\r])";
+	private static final String libraryline = "(?:[ \\n\\r]*.*?\\+[ \\n\\r]*[0-9]x[0-9a-zA-Z]+[ \\n\\r]*\\([0-9]x[0-9a-zA-Z]+\\))";
+	private static final String addressline = "(?:[ \\n\\r]*[0-9]x[0-9a-zA-Z]+)";
+
+	private static final String trace = "^(" + classmethodline + "|" + methodcallline + "|" + methodline + "|" + libraryline + "|" + addressline + "){2,}";
+	
+	// Compile the patterns once for reuse
+	private static final Pattern p_cml = Pattern.compile("^(" + classmethodline + ")", Pattern.MULTILINE);
+	private static final Pattern p_mcl = Pattern.compile("^(" + methodcallline + ")", Pattern.MULTILINE);
+	private static final Pattern p_ml = Pattern.compile("^(" + methodline + ")", Pattern.MULTILINE);
+	private static final Pattern p_ll = Pattern.compile("^(" + libraryline + ")", Pattern.MULTILINE);
+	private static final Pattern p_al = Pattern.compile("^(" + addressline + ")", Pattern.MULTILINE);
+	private static final Pattern ptl1 = Pattern.compile(trace, Pattern.MULTILINE);
 	
 	public String getOutputText() {
-		return textRemover.doDelete();
+		return lastResult.getOutputText();
 	}
 
 	public List<TalkbackTrace> runFilter(String inputText) {
-		textRemover = new FilterTextRemover(inputText);
+		lastResult = filter(inputText);
+		return new ArrayList<TalkbackTrace>(lastResult.getElements());
+	}
+	
+	/**
+	 * Find all blocks of talkback lines. The pattern for them is anchored at the start of a line,
+	 * so it is only tried at line starts instead of at every position of the text.
+	 * @param input the text to look for talkback lines in
+	 * @return the matches of the talkback pattern, as far as the regular expression budget of the input allows
+	 */
+	private Iterable<MatchResult> findTalkbackLines(final FilterInput input) {
+		// Regular expressions know more line terminators than the line index, so search everywhere then
+		if (input.getLineIndex().hasOtherLineTerminators())
+			return RegExHelper.matches(ptl1, input.getText(), input.getRegexBudget());
 		
+		return new Iterable<MatchResult>() {
+			public Iterator<MatchResult> iterator() {
+				return new LineStartMatchIterator(input);
+			}
+		};
+	}
+	
+	/**
+	 * Tries the talkback pattern at the next line starts when asked whether there is another match.
+	 */
+	private static final class LineStartMatchIterator implements Iterator<MatchResult> {
+		private final Matcher matcher;
+		private final CharSequence text;
+		private final LineIndex lines;
+		private final RegexBudget budget;
+		
+		private int line;
+		private int searchFrom;
+		private MatchResult next;
+		private boolean done;
+		
+		LineStartMatchIterator(FilterInput input) {
+			this.text = input.getText();
+			this.lines = input.getLineIndex();
+			this.budget = input.getRegexBudget();
+			this.matcher = ptl1.matcher(budget.wrap(text));
+			// ^ should match at the start of a region only where it would match when searching the whole text
+			this.matcher.useAnchoringBounds(false);
+			this.matcher.useTransparentBounds(true);
+		}
+		
+		public boolean hasNext() {
+			try {
+				while (next == null && !done) {
+					if (line >= lines.getLineCount()) {
+						done = true;
+						break;
+					}
+					int lineStart = lines.getLineStart(line++);
+					if (lineStart < searchFrom)
+						continue;
+					matcher.region(lineStart, text.length());
+					if (matcher.lookingAt()) {
+						next = RegExHelper.matchResult(matcher, text);
+						searchFrom = matcher.end();
+					}
+				}
+			} catch (RegexBudget.ExceededException e) {
+				// Keep the talkback lines found so far
+				done = true;
+			} catch (StackOverflowError e) {
+				budget.markExceeded();
+				done = true;
+			}
+			return next != null;
+		}
+		
+		public MatchResult next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			MatchResult result = next;
+			next = null;
+			return result;
+		}
+	}
+	
+	public FilterResult<TalkbackTrace> filter(FilterInput input) {
+		FilterStatistics.Sample sample = FilterStatistics.getDefault().start();
+		input.getRegexBudget().startFilter();
+		List<TextSpan> deletions = new ArrayList<TextSpan>();
 		List<TalkbackTrace> foundTraces = new ArrayList<TalkbackTrace>();
 		List<String> talkbackLines = new ArrayList<String>();
 		
@@ -38,26 +141,12 @@ public class FilterTalkBack implements IFilter {
 		   ){2,}
 		 */
 		
-		String classmethodline = "([ \\n\\r]*(?:.*)(?:::)(?:.*)[ \\n\\r]*\\[.*?,?[ \\n\\r]*line[ \\n\\r]*[0-9]+\\])";
-		String methodline = "(?:[ \\n\\r]*.*[ \\n\\r]*\\[.*?,?[ \\n\\r]*line[ \\n\\r]*[0-9]+\\])";
-		String methodcallline = "([ \\n\\r]*[^ ]*?\\(\\)[ ]*[\\n\\r])";
-		String libraryline = "(?:[ \\n\\r]*.*?\\+[ \\n\\r]*[0-9]x[0-9a-zA-Z]+[ \\n\\r]*\\([0-9]x[0-9a-zA-Z]+\\))";
-		String addressline = "(?:[ \\n\\r]*[0-9]x[0-9a-zA-Z]+)";
-
-		String trace = "^(" + classmethodline + "|" + methodcallline + "|" + methodline + "|" + libraryline + "|" + addressline + "){2,}";
-		
-		// Compile the patterns for reuse
-		Pattern p_cml = Pattern.compile("^(" + classmethodline + ")", Pattern.MULTILINE);
-		Pattern p_mcl = Pattern.compile("^(" + methodcallline + ")", Pattern.MULTILINE);
-		Pattern p_ml = Pattern.compile("^(" + methodline + ")", Pattern.MULTILINE);
-		Pattern p_ll = Pattern.compile("^(" + libraryline + ")", Pattern.MULTILINE);
-		Pattern p_al = Pattern.compile("^(" + addressline + ")", Pattern.MULTILINE);
-		Pattern ptl1 = Pattern.compile(trace, Pattern.MULTILINE);
-		
-		// Find all talkback lines
-		for (MatchResult r : RegExHelper.findMatches(ptl1, inputText)) {
+		// Find all talkback lines, if the text has anything the pattern needs
+		Iterable<MatchResult> matches = input.getFeatures().mayContainTalkbackTraces()
+				? findTalkbackLines(input) : new ArrayList<MatchResult>();
+		for (MatchResult r : matches) {
 			talkbackLines.add(r.group().trim());
-			textRemover.markForDeletion(r.start(), r.end());
+			deletions.add(new TextSpan(r.start(), r.end()));
 		}
 		
 		// From each set of talkback lines create a talkback trace
@@ -178,7 +267,10 @@ public class FilterTalkBack implements IFilter {
 				}
 			}
 		
-		return foundTraces;
+		FilterResult<TalkbackTrace> result = new FilterResult<TalkbackTrace>(input.getText(), foundTraces, deletions,
+				input.getRegexBudget().isExceeded());
+		FilterStatistics.getDefault().record("FilterTalkBack", sample, result);
+		return result;
 	}
 
 }
@@ -4,85 +4,135 @@
  */
 package io.kuy.infozilla.filters;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * The <code>FilterTextRemover</code> class is used to cut out the structural element
  * from the complete input text. Given a list of (possibly overlapping) cut points,
- * the class calculates the longest consecutive parts and marks them for deletion
- * through a character-wise bit mask.
+ * the class calculates the longest consecutive parts and removes them in one pass,
+ * copying the remaining ranges of text in bulk. Memory and time depend on the
+ * number of cut points, not on the length of the text.
  * @author Nicolas Bettenburg.
  *
  */
 public class FilterTextRemover {
-	
-	public class TextCutPoint {
-		private int start;
-		public int getStart() {
-			return start;
-		}
-		public void setStart(int start) {
-			this.start = start;
-		}
-		public int getEnd() {
-			return end;
-		}
-		public void setEnd(int end) {
-			this.end = end;
-		}
-		private int end;
-		public TextCutPoint(int start, int end) {
-			super();
-			this.start = start;
-			this.end = end;
-		}
-	}
-	
-	private String originalText = "";
-	private boolean[] deletionMask;
-	private List<TextCutPoint> cutPoints;
-	
-	public FilterTextRemover(String originalText) {
+
+	private CharSequence originalText = "";
+
+	/** The cut points, each packed as (start << 32 | end) so they sort by start */
+	private long[] cutPoints;
+	private int numCutPoints;
+
+	/** True while cutPoints is sorted by start and free of overlaps */
+	private boolean normalized;
+
+	public FilterTextRemover(CharSequence originalText) {
 		// Set the Text
 		this.originalText = originalText;
-		
-		// Create a deletion mask of appropriate size
-		deletionMask = new boolean[originalText.length()];
-		
-		// Initialize the Deletion Mask with false (=do not delete)
-		for (int i=0; i < deletionMask.length; i++) {
-			deletionMask[i] = false;
-		}
-		
-		cutPoints = new ArrayList<TextCutPoint>();
+
+		// Nothing is marked for deletion yet
+		this.cutPoints = new long[8];
+		this.numCutPoints = 0;
+		this.normalized = true;
 	}
-	
+
 	public void markForDeletion(int start, int end) {
-		cutPoints.add(new TextCutPoint(start, end));
-		if (start >= 0 && end <= deletionMask.length) {
-			for (int i = start; i < end; i++) {
-				deletionMask[i] = true;
-			}
+		if (start >= 0 && end <= originalText.length()) {
+			// Empty ranges do not delete anything
+			if (start >= end)
+				return;
+			if (numCutPoints == cutPoints.length)
+				cutPoints = Arrays.copyOf(cutPoints, 2 * numCutPoints);
+			cutPoints[numCutPoints++] = ((long) start << 32) | end;
+			normalized = false;
 		} else {
-			System.err.println("Warning! Trying to Delete out of Bounds: " + start + " until " + end + " but bounds are 0:"  + deletionMask.length);
+			System.err.println("Warning! Trying to Delete out of Bounds: " + start + " until " + end + " but bounds are 0:"  + originalText.length());
 			System.err.println("Will not mark for deletion!");
 		}
 	}
-	
-	
+
+	/**
+	 * Sort the cut points and merge the ones that overlap or touch.
+	 */
+	private void normalize() {
+		if (normalized)
+			return;
+		Arrays.sort(cutPoints, 0, numCutPoints);
+		int merged = 0;
+		for (int i = 0; i < numCutPoints; i++) {
+			int start = start(cutPoints[i]);
+			int end = end(cutPoints[i]);
+			if (merged > 0 && start <= end(cutPoints[merged - 1])) {
+				// Overlaps the previous range, so extend it
+				int previousStart = start(cutPoints[merged - 1]);
+				int previousEnd = end(cutPoints[merged - 1]);
+				cutPoints[merged - 1] = ((long) previousStart << 32) | Math.max(previousEnd, end);
+			} else {
+				cutPoints[merged++] = ((long) start << 32) | end;
+			}
+		}
+		numCutPoints = merged;
+		normalized = true;
+	}
+
+	private static int start(long cutPoint) {
+		return (int) (cutPoint >>> 32);
+	}
+
+	private static int end(long cutPoint) {
+		return (int) cutPoint;
+	}
+
 	public String doDelete() {
-		StringBuilder myStringBuilder = new StringBuilder();
-		
-		for (int i = 0; i < originalText.length(); i++) {
-			if (!deletionMask[i])
-				myStringBuilder.append(originalText.charAt(i));
+		normalize();
+		if (numCutPoints == 0)
+			return originalText.toString();
+
+		int deleted = 0;
+		for (int i = 0; i < numCutPoints; i++)
+			deleted += end(cutPoints[i]) - start(cutPoints[i]);
+
+		// Copy every range between two cut points in one go
+		StringBuilder myStringBuilder = new StringBuilder(originalText.length() - deleted);
+		int kept = 0;
+		for (int i = 0; i < numCutPoints; i++) {
+			myStringBuilder.append(originalText, kept, start(cutPoints[i]));
+			kept = end(cutPoints[i]);
 		}
+		myStringBuilder.append(originalText, kept, originalText.length());
 		return myStringBuilder.toString();
 	}
-	
+
+	/**
+	 * Describe where the characters left by {@link #doDelete()} came from.
+	 * @return a map from positions in the text after deletion to positions in the original text
+	 */
+	public OffsetMap getOffsetMap() {
+		normalize();
+		int[] originalStarts = new int[numCutPoints + 1];
+		int[] textStarts = new int[numCutPoints + 1];
+		int ranges = 0;
+		int kept = 0;
+		int length = 0;
+		for (int i = 0; i <= numCutPoints; i++) {
+			int rangeEnd = (i < numCutPoints) ? start(cutPoints[i]) : originalText.length();
+			if (rangeEnd > kept) {
+				originalStarts[ranges] = kept;
+				textStarts[ranges] = length;
+				length += rangeEnd - kept;
+				ranges++;
+			}
+			if (i < numCutPoints)
+				kept = end(cutPoints[i]);
+		}
+		// A text that was deleted completely still needs a position to map to
+		if (ranges == 0)
+			ranges = 1;
+		return new OffsetMap(Arrays.copyOf(originalStarts, ranges), Arrays.copyOf(textStarts, ranges), length, originalText.length());
+	}
+
 	public String getText() {
-		return originalText;
+		return originalText.toString();
 	}
-	
+
 }
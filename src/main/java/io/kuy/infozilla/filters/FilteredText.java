@@ -0,0 +1,141 @@
+/**
+ * FilteredText.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+/**
+ * A view of a text that some spans were cut out of. The view presents the original text
+ * without the cut spans, but does not copy it: every character is read from the original
+ * text through an {@link OffsetMap}. This lets a filter chain hand the remainder of a stage
+ * to the next one, which can run regular expressions on it directly.
+ * <p>
+ * Reading the characters in order, as a {@link java.util.regex.Matcher} mostly does, costs
+ * a constant amount of time per character, since the view remembers the range it read last.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class FilteredText implements CharSequence {
+
+	private final CharSequence originalText;
+	private final OffsetMap offsetMap;
+
+	/**
+	 * The kept range that was read last. Ranges are immutable, so a stale one seen by
+	 * another thread is still valid, it just does not hold the wanted position.
+	 */
+	private Range lastRange;
+	
+	/**
+	 * The view as a String, built on first use. Filters may ask for it once per element they find,
+	 * so building it every time would make searching a view quadratic. Strings are immutable,
+	 * so a race only costs building it twice.
+	 */
+	private String string;
+	
+	/**
+	 * A kept range of the original text, as positions in this view and the distance to their
+	 * positions in the original text.
+	 */
+	private static final class Range {
+		final int index;
+		final int start;
+		final int end;
+		final int delta;
+		
+		Range(OffsetMap offsetMap, int index) {
+			this.index = index;
+			this.start = offsetMap.getTextStart(index);
+			this.end = offsetMap.getTextEnd(index);
+			this.delta = offsetMap.getOriginalStart(index) - start;
+		}
+	}
+
+	/**
+	 * @param originalText the complete text
+	 * @param offsetMap the map describing which ranges of the text were kept
+	 */
+	public FilteredText(CharSequence originalText, OffsetMap offsetMap) {
+		if (offsetMap.getOriginalLength() != originalText.length())
+			throw new IllegalArgumentException("The offset map is for a text of length " + offsetMap.getOriginalLength()
+					+ " but the text has length " + originalText.length());
+		this.originalText = originalText;
+		this.offsetMap = offsetMap;
+		this.lastRange = new Range(offsetMap, 0);
+	}
+
+	/**
+	 * @return the complete text this is a view of
+	 */
+	public CharSequence getOriginalText() {
+		return originalText;
+	}
+
+	/**
+	 * @return the map from positions in this view to positions in the original text
+	 */
+	public OffsetMap getOffsetMap() {
+		return offsetMap;
+	}
+
+	public int length() {
+		return offsetMap.getLength();
+	}
+
+	public char charAt(int index) {
+		Range range = lastRange;
+		if (index >= range.start && index < range.end)
+			return originalText.charAt(index + range.delta);
+		return originalText.charAt(index + findRange(index).delta);
+	}
+	
+	/**
+	 * Look up the kept range that holds a position and remember it for the next read.
+	 */
+	private Range findRange(int index) {
+		if (index < 0 || index >= offsetMap.getLength())
+			throw new IndexOutOfBoundsException("Index " + index + " is outside of 0:" + offsetMap.getLength());
+		Range range = lastRange;
+		// Sequential reads usually continue in the next range
+		if (range.index + 1 < offsetMap.getRangeCount() && index >= range.end && index < offsetMap.getTextEnd(range.index + 1))
+			range = new Range(offsetMap, range.index + 1);
+		else
+			range = new Range(offsetMap, offsetMap.rangeOf(index));
+		lastRange = range;
+		return range;
+	}
+
+	/**
+	 * Copy a part of the view.
+	 * @return a String holding the characters between start and end
+	 */
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > offsetMap.getLength() || start > end)
+			throw new IndexOutOfBoundsException("Range " + start + ":" + end + " is outside of 0:" + offsetMap.getLength());
+		if (start == end)
+			return "";
+		StringBuilder sb = new StringBuilder(end - start);
+		// Copy range by range
+		for (int range = offsetMap.rangeOf(start); range < offsetMap.getRangeCount(); range++) {
+			int textStart = Math.max(start, offsetMap.getTextStart(range));
+			int textEnd = Math.min(end, offsetMap.getTextEnd(range));
+			if (textStart >= end)
+				break;
+			int originalStart = offsetMap.getOriginalStart(range) + (textStart - offsetMap.getTextStart(range));
+			sb.append(originalText, originalStart, originalStart + (textEnd - textStart));
+		}
+		return sb.toString();
+	}
+
+	public String toString() {
+		if (string == null) {
+			// Nothing was cut out
+			if (offsetMap.getLength() == originalText.length())
+				string = originalText.toString();
+			else
+				string = subSequence(0, length()).toString();
+		}
+		return string;
+	}
+
+}
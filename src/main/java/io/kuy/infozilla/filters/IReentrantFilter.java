@@ -0,0 +1,25 @@
+/**
+ * IReentrantFilter.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+/**
+ * This interface describes a stateless infoZilla Filter. Unlike {@link IFilter}, the found
+ * elements and the text to remove are returned together, so implementations keep no
+ * per-document state and a single instance can be shared by any number of threads.
+ * The input may be any {@link CharSequence}, such as a {@link FilteredText} left over by an
+ * earlier filter. Filters that run on the same {@link FilterInput} share its {@link LineIndex}.
+ * @author Nicolas Bettenburg
+ *
+ * @param <T> the type of structural element the filter extracts
+ */
+public interface IReentrantFilter<T> {
+
+	public FilterResult<T> filter(FilterInput input);
+	
+	public default FilterResult<T> filter(CharSequence inputText) {
+		return filter(new FilterInput(inputText));
+	}
+	
+}
@@ -0,0 +1,167 @@
+/**
+ * JavaCodeDB.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.regex.Pattern;
+
+import com.Ostermiller.util.CSVParser;
+
+/**
+ * The <code>JavaCodeDB</code> class holds the compiled source code patterns read from
+ * a code pattern database such as Java_CodeDB.txt. A database is immutable once it has
+ * been read, so it can be compiled once and shared by any number of
+ * {@link FilterSourceCodeJAVA} instances and threads.
+ * <p>
+ * A pattern may declare the {@link TextFeatures} a text needs for it to match, such as the
+ * CODE_PUNCTUATION an import cannot do without. When no pattern can match a text, it is not
+ * searched at all. A pattern that declares nothing is always searched for.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class JavaCodeDB {
+
+	/** The location of the code pattern database that ships with infoZilla */
+	public static final String DEFAULT_RESOURCE = "/Java_CodeDB.txt";
+	
+	/** Stores the compiled codePatterns by keyword */
+	private final Map<String, Pattern> codePatterns;
+	
+	/** Stores the code pattern options by keyword */
+	private final Map<String, String> codePatternOptions;
+	
+	/** The features a text needs for each of the patterns to match, see {@link TextFeatures} */
+	private final int[] requiredFeatures;
+	
+	private JavaCodeDB(Map<String, Pattern> codePatterns, Map<String, String> codePatternOptions, Map<String, Integer> requiredFeatures) {
+		this.codePatterns = Collections.unmodifiableMap(codePatterns);
+		this.codePatternOptions = Collections.unmodifiableMap(codePatternOptions);
+		this.requiredFeatures = new int[codePatterns.size()];
+		int i = 0;
+		for (String keyword : codePatterns.keySet()) {
+			Integer features = requiredFeatures.get(keyword);
+			this.requiredFeatures[i++] = (features != null) ? features.intValue() : 0;
+		}
+	}
+	
+	/** Lazily reads and compiles the default database exactly once */
+	private static class DefaultHolder {
+		private static final JavaCodeDB INSTANCE = readDefault();
+	}
+	
+	/**
+	 * Get the shared database compiled from the Java_CodeDB.txt resource.
+	 * @return the default code pattern database.
+	 */
+	public static JavaCodeDB getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+	
+	private static JavaCodeDB readDefault() {
+		try (InputStream instream = JavaCodeDB.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+			return read(instream);
+		} catch (Exception e) {
+			System.err.println("Error while reading Java Source Code Patterns!");
+			e.printStackTrace();
+			return new JavaCodeDB(new HashMap<String, Pattern>(), new HashMap<String, String>(), new HashMap<String, Integer>());
+		}
+	}
+	
+	/**
+	 * Read and compile a code pattern database from a file named {@link filename}
+	 * @param filename the full qualified filename from which to read the code patterns.
+	 * @return the compiled database.
+	 * @throws IOException if something goes wrong with I/O
+	 */
+	public static JavaCodeDB read(final String filename) throws IOException {
+		try (InputStream instream = new FileInputStream(filename)) {
+			return read(instream);
+		}
+	}
+	
+	/**
+	 * Read and compile a code pattern database from an input stream {@link instream}
+	 * @param instream the input stream to read the code patterns from
+	 * @return the compiled database.
+	 * @throws IOException if something goes wrong with I/O
+	 */
+	public static JavaCodeDB read(final InputStream instream) throws IOException {
+		Map<String, Pattern> codePatterns = new HashMap<String, Pattern>();
+		Map<String, String> codePatternOptions = new HashMap<String, String>();
+		Map<String, Integer> requiredFeatures = new HashMap<String, Integer>();
+		
+		BufferedReader fileInput = new BufferedReader(new InputStreamReader(instream));
+		// Read patterns from the file
+		String inputLine = null;
+		while ( (inputLine = fileInput.readLine())  != null ) {
+			// Input comes in the format: "keyword","PATTERN","OPTIONS","FEATURES"
+			// A line can be commented out by using //
+			if (!inputLine.substring(0, 2).equalsIgnoreCase("//")) {
+				// we use Ostermillers CSV Parser for sake of ease
+				String[][] parsedLine = CSVParser.parse(inputLine);
+				String keyword = parsedLine[0][0];
+				String pattern = parsedLine[0][1];
+				// Check if we have some options
+				if (parsedLine[0].length >= 3) {
+					String options = parsedLine[0][2];
+					codePatternOptions.put(keyword, options);
+				} else {
+					codePatternOptions.put(keyword, "");
+				}
+				// Check if the pattern needs some features of the text
+				int features = 0;
+				if (parsedLine[0].length >= 4) {
+					for (StringTokenizer names = new StringTokenizer(parsedLine[0][3]); names.hasMoreTokens(); ) {
+						String name = names.nextToken();
+						int feature = TextFeatures.forName(name);
+						if (feature == 0)
+							throw new IOException("Unknown text feature " + name + " for the code pattern " + keyword);
+						features |= feature;
+					}
+				}
+				requiredFeatures.put(keyword, Integer.valueOf(features));
+				Pattern somePattern = Pattern.compile(pattern);
+				codePatterns.put(keyword, somePattern);
+			}
+		}
+		return new JavaCodeDB(codePatterns, codePatternOptions, requiredFeatures);
+	}
+	
+	/**
+	 * @return the compiled code patterns by keyword
+	 */
+	public Map<String, Pattern> getCodePatterns() {
+		return codePatterns;
+	}
+	
+	/**
+	 * @return the code pattern options by keyword
+	 */
+	public Map<String, String> getCodePatternOptions() {
+		return codePatternOptions;
+	}
+	
+	/**
+	 * Check whether any of the patterns can match a text with the given features.
+	 * @param features the features of the text
+	 * @return false if none of the patterns can match the text
+	 */
+	public boolean mayMatch(TextFeatures features) {
+		for (int required : requiredFeatures) {
+			if (features.hasAll(required))
+				return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,392 @@
+/**
+ * JavaStackTraceLexer.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.kuy.infozilla.elements.stacktrace.java.StackFrame;
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.helpers.RegExHelper;
+
+/**
+ * Finds Java stack traces line by line, without regular expressions. Every line is classified
+ * as an exception header, a <code>Caused by:</code> line, an <code>at ...(...)</code> frame,
+ * possibly wrapped before its location, a <code>... N more</code> line or something else, and a small
+ * state machine puts the lines together into traces. The time is linear in the length of the
+ * text, whatever the text looks like, which the regular expressions of {@link FilterStackTraceJAVA}
+ * cannot promise.
+ * <p>
+ * A trace starts with a header line that names an exception or error, such as
+ * <code>java.lang.IllegalStateException: message</code>, optionally indented or preceded by
+ * <code>Exception in thread "main"</code>. Its reason is everything from the exception name to the
+ * first frame, which has to follow within {@link #MAX_REASON_LINES} lines. The frames end with the first
+ * line that is not a frame, and a <code>... N more</code> line still belongs to them. A cause is
+ * found the same way from its <code>Caused by:</code> line, and like with the regular expressions
+ * it becomes a trace of its own that is marked as a cause. It is linked to the trace found last
+ * if there is nothing but blank lines and <code>... N more</code> lines between them, like
+ * {@link CauseChains} links the traces found by the regular expressions.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class JavaStackTraceLexer {
+
+	/** How many lines may lie between a header and the first frame of its trace */
+	public static final int MAX_REASON_LINES = 20;
+
+	private static final String CAUSED_BY = "Caused by:";
+	private static final String IN_THREAD = "Exception in thread \"";
+
+	/** What a line may be part of */
+	private enum Kind { HEADER, CAUSE, FRAME, MORE, OTHER }
+
+	/**
+	 * Where the lines of a text are, whether it is all in memory or read bit by bit.
+	 */
+	interface Lines {
+		/**
+		 * @return whether the line exists, possibly after reading it
+		 */
+		boolean hasLine(int line);
+
+		/**
+		 * @return the position of the first character of the line
+		 */
+		int getLineStart(int line);
+
+		/**
+		 * @return the position of the terminator of the line
+		 */
+		int getLineEnd(int line);
+
+		/**
+		 * @return the position right behind the terminator of the line, or its end if it has none
+		 */
+		int getBreakEnd(int line);
+	}
+
+	private final Lines lines;
+	private final CharSequence text;
+	private final List<StackTrace> traces;
+	private final List<TextSpan> deletions;
+
+	/** The trace being put together, and what is known about it */
+	private boolean inTrace;
+	private boolean inFrames;
+	private boolean cause;
+	private int traceStart;
+	private String exception;
+	private int reasonStart;
+	private int reasonLines;
+	private String reason;
+	private List<StackFrame> frames;
+	private int commonFrames;
+	private int traceEndLine;
+	private StackTrace parent;
+
+	/** The trace found last, as long as only blank lines and "... N more" lines follow it */
+	private StackTrace lastTrace;
+
+	/** What the last call to classify() found on a line, and the last line it took */
+	private Kind kind;
+	private int tokenStart;
+	private int tokenEnd;
+	private String frame;
+	private int moreFrames;
+	private int lastLine;
+
+	/**
+	 * @param lines the lines of the text
+	 * @param text the text
+	 * @param traces a list the traces are added to as soon as they end
+	 * @param deletions a list the spans of the traces are added to, or null
+	 */
+	JavaStackTraceLexer(Lines lines, CharSequence text, List<StackTrace> traces, List<TextSpan> deletions) {
+		this.lines = lines;
+		this.text = text;
+		this.traces = traces;
+		this.deletions = deletions;
+	}
+
+	/**
+	 * Find all Java stack traces in a text.
+	 * @param lines the lines of the text to look in
+	 * @param deletions a list the spans of all found traces are added to, in the coordinates of the text
+	 * @return the traces and causes in the order they appear in the text
+	 */
+	public static List<StackTrace> findStackTraces(final LineIndex lines, List<TextSpan> deletions) {
+		final CharSequence text = lines.getText();
+		List<StackTrace> traces = new ArrayList<StackTrace>();
+		JavaStackTraceLexer lexer = new JavaStackTraceLexer(new Lines() {
+			public boolean hasLine(int line) {
+				return line < lines.getLineCount();
+			}
+
+			public int getLineStart(int line) {
+				return lines.getLineStart(line);
+			}
+
+			public int getLineEnd(int line) {
+				return lines.getLineEnd(line);
+			}
+
+			public int getBreakEnd(int line) {
+				int end = lines.getLineEnd(line);
+				return (end < text.length()) ? end + 1 : end;
+			}
+		}, text, traces, deletions);
+		for (int line = 0; line < lines.getLineCount(); )
+			line = lexer.step(line);
+		lexer.end();
+		return traces;
+	}
+
+	/**
+	 * Look at the next line.
+	 * @param line the line after the last one looked at, or the first one
+	 * @return the next line to look at, which is more than one further if the line was joined with the next
+	 */
+	int step(int line) {
+		classify(line);
+		switch (kind) {
+		case HEADER:
+		case CAUSE:
+			finish();
+			start(line);
+			break;
+		case FRAME:
+			if (inTrace) {
+				if (!inFrames) {
+					// A reason over several lines reads the same whatever line breaks the text has
+					reason = RegExHelper.makeLinuxNewlines(text.subSequence(reasonStart, lines.getLineStart(line) + firstNonBlank(line)).toString()).trim();
+					inFrames = true;
+				}
+				frames.add(StackFrame.parse(frame));
+				traceEndLine = lastLine;
+			} else {
+				lastTrace = null;
+			}
+			break;
+		case MORE:
+			if (inFrames) {
+				// The rest of the frames are the same as in the enclosing trace
+				commonFrames = moreFrames;
+				traceEndLine = line;
+				finish();
+			} else {
+				// Otherwise it is just another line of the reason
+				reasonLine();
+			}
+			break;
+		default:
+			if (inFrames)
+				finish();
+			else
+				reasonLine();
+			// A cause below this line does not belong to the trace above it
+			if (firstNonBlank(line) < lines.getLineEnd(line) - lines.getLineStart(line))
+				lastTrace = null;
+			break;
+		}
+		return lastLine + 1;
+	}
+
+	/**
+	 * Count another line between a header and its first frame.
+	 */
+	private void reasonLine() {
+		if (inTrace && ++reasonLines > MAX_REASON_LINES) {
+			// A header without frames is just text
+			inTrace = false;
+		}
+	}
+
+	/**
+	 * Add the last trace, at the end of the text.
+	 */
+	void end() {
+		finish();
+	}
+
+	/**
+	 * @return whether the lines since a header may still turn out to be a trace
+	 */
+	boolean inTrace() {
+		return inTrace;
+	}
+
+	private void start(int line) {
+		inTrace = true;
+		inFrames = false;
+		cause = (kind == Kind.CAUSE);
+		traceStart = lines.getLineStart(line) + (cause ? firstNonBlank(line) : 0);
+		exception = text.subSequence(tokenStart, tokenEnd).toString();
+		reasonStart = tokenEnd;
+		reasonLines = 0;
+		reason = "";
+		frames = new ArrayList<StackFrame>();
+		commonFrames = 0;
+		// A cause right below a trace belongs to it
+		parent = cause ? lastTrace : null;
+		lastTrace = null;
+	}
+
+	/**
+	 * Add the trace being put together to the result, if it got as far as having frames.
+	 */
+	private void finish() {
+		if (inFrames) {
+			StackTrace trace = new StackTrace(exception, reason, frames.toArray(new StackFrame[frames.size()]));
+			trace.setCause(cause);
+			trace.setCommonFrames(commonFrames);
+			trace.setParent(parent);
+			// Take the line break after the trace along, so that no empty line is left behind
+			int end = lines.getBreakEnd(traceEndLine);
+			trace.setTraceStart(traceStart);
+			trace.setTraceEnd(end);
+			traces.add(trace);
+			if (deletions != null)
+				deletions.add(new TextSpan(traceStart, end));
+			lastTrace = trace;
+		}
+		inTrace = false;
+		inFrames = false;
+	}
+
+	/**
+	 * Find out what a line is, and where its exception name or frame location is.
+	 */
+	private void classify(int line) {
+		int start = lines.getLineStart(line);
+		int end = lines.getLineEnd(line);
+		int i = start + firstNonBlank(line);
+		kind = Kind.OTHER;
+		lastLine = line;
+
+		if (startsWith(i, end, "at") && i + 2 < end && isBlank(text.charAt(i + 2))) {
+			// at some.package.Class.method(Class.java:42)
+			int name = skipBlanks(i + 2, end);
+			int nameEnd = skipName(name, end);
+			if (nameEnd == name || !isQualified(name, nameEnd))
+				return;
+			int open = skipBlanks(nameEnd, end);
+			if (isLocation(open, end)) {
+				kind = Kind.FRAME;
+				frame = text.subSequence(name, trimEnd(open, end)).toString();
+			} else if (open == end && lines.hasLine(line + 1)) {
+				// Mail clients like to wrap long frames right before the location
+				int next = lines.getLineStart(line + 1) + firstNonBlank(line + 1);
+				int nextEnd = lines.getLineEnd(line + 1);
+				if (isLocation(next, nextEnd)) {
+					kind = Kind.FRAME;
+					frame = text.subSequence(name, nameEnd).toString() + text.subSequence(next, trimEnd(next, nextEnd));
+					lastLine = line + 1;
+				}
+			}
+		} else if (startsWith(i, end, "...")) {
+			// ... 12 more
+			moreFrames = CauseChains.parseMore(text, i, end);
+			if (moreFrames >= 0)
+				kind = Kind.MORE;
+		} else if (startsWith(i, end, CAUSED_BY)) {
+			if (isExceptionName(skipBlanks(i + CAUSED_BY.length(), end), end))
+				kind = Kind.CAUSE;
+		} else {
+			if (startsWith(i, end, IN_THREAD)) {
+				// Exception in thread "main" java.lang.NullPointerException
+				int quote = i + IN_THREAD.length();
+				while (quote < end && text.charAt(quote) != '"')
+					quote++;
+				if (quote < end)
+					i = skipBlanks(quote + 1, end);
+			}
+			if (isExceptionName(i, end))
+				kind = Kind.HEADER;
+		}
+	}
+
+	/**
+	 * Check for a qualified name ending in Exception or Error, followed by the end of the line,
+	 * a colon or a blank, and remember where it is.
+	 */
+	private boolean isExceptionName(int start, int end) {
+		int nameEnd = skipName(start, end);
+		if (nameEnd == start || !isQualified(start, nameEnd))
+			return false;
+		if (!endsWith(start, nameEnd, "Exception") && !endsWith(start, nameEnd, "Error"))
+			return false;
+		if (nameEnd < end && text.charAt(nameEnd) != ':' && !isBlank(text.charAt(nameEnd)))
+			return false;
+		tokenStart = start;
+		tokenEnd = nameEnd;
+		return true;
+	}
+
+	/**
+	 * Check for the location of a frame, such as (Class.java:42) or (Native Method), up to the end of the line
+	 */
+	private boolean isLocation(int start, int end) {
+		int close = trimEnd(start, end);
+		return start < close && text.charAt(start) == '(' && close > start + 1 && text.charAt(close - 1) == ')';
+	}
+
+	private int firstNonBlank(int line) {
+		int start = lines.getLineStart(line);
+		return skipBlanks(start, lines.getLineEnd(line)) - start;
+	}
+
+	private int skipBlanks(int from, int end) {
+		while (from < end && isBlank(text.charAt(from)))
+			from++;
+		return from;
+	}
+
+	private int trimEnd(int start, int end) {
+		while (end > start && isBlank(text.charAt(end - 1)))
+			end--;
+		return end;
+	}
+
+	/**
+	 * Skip the characters of a qualified Java name, including the module of a frame like java.base/java.lang.Thread
+	 */
+	private int skipName(int from, int end) {
+		while (from < end) {
+			char c = text.charAt(from);
+			if (!Character.isJavaIdentifierPart(c) && c != '.' && c != '<' && c != '>' && c != '/')
+				break;
+			from++;
+		}
+		return from;
+	}
+
+	/**
+	 * A qualified name has a dot between two other characters
+	 */
+	private boolean isQualified(int start, int end) {
+		for (int i = start + 1; i < end - 1; i++)
+			if (text.charAt(i) == '.')
+				return true;
+		return false;
+	}
+
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	private boolean startsWith(int start, int end, String prefix) {
+		if (end - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (text.charAt(start + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	private boolean endsWith(int start, int end, String suffix) {
+		return end - start >= suffix.length() && startsWith(end - suffix.length(), end, suffix);
+	}
+
+}
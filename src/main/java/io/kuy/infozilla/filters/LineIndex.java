@@ -0,0 +1,155 @@
+/**
+ * LineIndex.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.util.Arrays;
+
+/**
+ * The positions of all lines in a text, computed in a single pass. The lines are the same
+ * as the ones <code>text.split("[\n\r]")</code> returns: every <code>\n</code> and every
+ * <code>\r</code> ends a line, and empty lines at the end of the text do not count. Unlike
+ * splitting, the index does not copy the text, and finding where a line starts or which
+ * line an offset belongs to takes constant or logarithmic time.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class LineIndex {
+
+	private final CharSequence text;
+
+	/** The start of every line, including the empty ones at the end */
+	private final int[] lineStarts;
+
+	/** The number of lines, with and without the empty ones at the end */
+	private final int segments;
+	private final int lineCount;
+
+	/** True if the text contains line terminators other than \n and \r */
+	private final boolean otherTerminators;
+
+	public LineIndex(CharSequence text) {
+		this.text = text;
+		int length = text.length();
+
+		int[] starts = new int[16];
+		int segments = 1;
+		boolean others = false;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r') {
+				if (segments == starts.length)
+					starts = Arrays.copyOf(starts, 2 * segments);
+				starts[segments++] = i + 1;
+			} else if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				others = true;
+			}
+		}
+		this.lineStarts = starts;
+		this.segments = segments;
+		this.otherTerminators = others;
+
+		// A text without terminators is a single line, even if it is empty.
+		// Otherwise the empty lines at the end are dropped, just like split() does.
+		int count = segments;
+		if (segments > 1) {
+			while (count > 0 && segmentEnd(count - 1) == lineStarts[count - 1])
+				count--;
+		}
+		this.lineCount = count;
+	}
+
+	private int segmentEnd(int line) {
+		return (line + 1 < segments) ? lineStarts[line + 1] - 1 : text.length();
+	}
+
+	/**
+	 * @return the text the index was built for
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	/**
+	 * @return the number of lines, the same as the length of the array split() returns
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return the position of the first character of the given line
+	 */
+	public int getLineStart(int line) {
+		checkLine(line);
+		return lineStarts[line];
+	}
+
+	/**
+	 * @return the position right behind the last character of the given line, that is the position of its terminator
+	 */
+	public int getLineEnd(int line) {
+		checkLine(line);
+		return segmentEnd(line);
+	}
+
+	/**
+	 * @return the number of characters in the given line, not counting its terminator
+	 */
+	public int getLineLength(int line) {
+		return getLineEnd(line) - getLineStart(line);
+	}
+
+	/**
+	 * @return a copy of the given line without its terminator
+	 */
+	public String getLine(int line) {
+		return text.subSequence(getLineStart(line), getLineEnd(line)).toString();
+	}
+
+	/**
+	 * Check whether a line starts with a given prefix, without copying the line.
+	 */
+	public boolean lineStartsWith(int line, String prefix) {
+		int start = getLineStart(line);
+		if (getLineEnd(line) - start < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (text.charAt(start + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Find the line a position belongs to. A terminator belongs to the line it ends.
+	 * @param position a position in the text
+	 * @return the number of the line, or -1 if the position is in the empty lines at the end of the text
+	 */
+	public int getLineOf(int position) {
+		if (position < 0 || position > text.length())
+			throw new IndexOutOfBoundsException("Position " + position + " is outside of 0:" + text.length());
+		if (lineCount == 0)
+			return -1;
+		int line = Arrays.binarySearch(lineStarts, 0, lineCount, position);
+		if (line < 0)
+			line = -line - 2;
+		if (line == lineCount - 1 && position > getLineEnd(line))
+			return -1;
+		return line;
+	}
+
+	/**
+	 * Regular expressions treat a few more characters as line terminators than the index does.
+	 * @return true if the text contains U+0085, U+2028 or U+2029
+	 */
+	public boolean hasOtherLineTerminators() {
+		return otherTerminators;
+	}
+
+	private void checkLine(int line) {
+		if (line < 0 || line >= lineCount)
+			throw new IndexOutOfBoundsException("Line " + line + " is outside of 0:" + lineCount);
+	}
+
+}
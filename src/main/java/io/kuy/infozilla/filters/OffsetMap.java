@@ -0,0 +1,153 @@
+/**
+ * OffsetMap.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.util.Arrays;
+
+/**
+ * Translates positions in a text that had some spans cut out of it back to positions
+ * in the original text. The map stores the ranges of the original text that were kept,
+ * together with the position each of them starts at in the cut text, and answers every
+ * lookup with a binary search over these ranges.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class OffsetMap {
+
+	/** Start of each kept range in the original text */
+	private final int[] originalStarts;
+
+	/** Start of each kept range in the cut text */
+	private final int[] textStarts;
+
+	private final int length;
+	private final int originalLength;
+
+	OffsetMap(int[] originalStarts, int[] textStarts, int length, int originalLength) {
+		this.originalStarts = originalStarts;
+		this.textStarts = textStarts;
+		this.length = length;
+		this.originalLength = originalLength;
+	}
+
+	/**
+	 * Create a map for a text that nothing was cut out of.
+	 * @param length the length of the text
+	 * @return a map that translates every position to itself
+	 */
+	public static OffsetMap identity(int length) {
+		return new OffsetMap(new int[] {0}, new int[] {0}, length, length);
+	}
+
+	/**
+	 * Create a map for a text that single characters were cut out of, such as the line feeds
+	 * of Windows line breaks.
+	 * @param positions the positions of the cut characters in the original text, in ascending order
+	 * @param count how many of the positions are used
+	 * @param originalLength the length of the original text
+	 * @return a map that translates every position of the cut text to the original text
+	 */
+	public static OffsetMap withoutCharacters(int[] positions, int count, int originalLength) {
+		int[] originalStarts = new int[count + 1];
+		int[] textStarts = new int[count + 1];
+		int ranges = 0;
+		int kept = 0;
+		int length = 0;
+		for (int i = 0; i <= count; i++) {
+			int rangeEnd = (i < count) ? positions[i] : originalLength;
+			if (rangeEnd > kept) {
+				originalStarts[ranges] = kept;
+				textStarts[ranges] = length;
+				length += rangeEnd - kept;
+				ranges++;
+			}
+			if (i < count)
+				kept = positions[i] + 1;
+		}
+		// A text that was cut completely still needs a position to map to
+		if (ranges == 0)
+			ranges = 1;
+		return new OffsetMap(Arrays.copyOf(originalStarts, ranges), Arrays.copyOf(textStarts, ranges), length, originalLength);
+	}
+
+	/**
+	 * @return the length of the cut text
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the length of the original text
+	 */
+	public int getOriginalLength() {
+		return originalLength;
+	}
+
+	/**
+	 * Translate the position of a character in the cut text to its position in the original text.
+	 * @param position a position between 0 and {@link #getLength()}
+	 * @return the position of the same character in the original text
+	 */
+	public int toOriginal(int position) {
+		if (position < 0 || position > length)
+			throw new IndexOutOfBoundsException("Position " + position + " is outside of 0:" + length);
+		int range = rangeOf(position);
+		return originalStarts[range] + (position - textStarts[range]);
+	}
+
+	/**
+	 * Translate the exclusive end of a span in the cut text to the original text. Unlike
+	 * {@link #toOriginal(int)} this stays right behind the last character of the span and
+	 * does not move across a cut that follows it.
+	 * @param position a position between 0 and {@link #getLength()}
+	 * @return the exclusive end of the same span in the original text
+	 */
+	public int toOriginalEnd(int position) {
+		if (position == 0)
+			return toOriginal(0);
+		return toOriginal(position - 1) + 1;
+	}
+
+	/**
+	 * @return the number of kept ranges
+	 */
+	int getRangeCount() {
+		return textStarts.length;
+	}
+
+	/**
+	 * @return where the given kept range starts in the original text
+	 */
+	int getOriginalStart(int range) {
+		return originalStarts[range];
+	}
+
+	/**
+	 * @return where the given kept range starts in the cut text
+	 */
+	int getTextStart(int range) {
+		return textStarts[range];
+	}
+
+	/**
+	 * @return where the given kept range ends in the cut text
+	 */
+	int getTextEnd(int range) {
+		return (range + 1 < textStarts.length) ? textStarts[range + 1] : length;
+	}
+
+	/**
+	 * Find the last kept range that starts at or before the given position in the cut text
+	 */
+	int rangeOf(int position) {
+		int range = Arrays.binarySearch(textStarts, position);
+		if (range < 0)
+			return -range - 2;
+		// Empty ranges do not exist, so a hit is always the range that holds the character
+		return range;
+	}
+
+}
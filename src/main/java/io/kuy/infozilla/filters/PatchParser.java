@@ -6,6 +6,7 @@ package io.kuy.infozilla.filters;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import io.kuy.infozilla.elements.patch.Patch;
 import io.kuy.infozilla.elements.patch.PatchHunk;
@@ -15,19 +16,22 @@ public class PatchParser {
 	// Debug output is VERY verbose, so it's turned off by default!
 	private final static boolean debug = false;
 	
+	/** A hunk header line looks like @@ -X,Y +XX,YY @@ */
+	private final static Pattern HUNK_HEADER = Pattern.compile("^@@\\s\\-\\d+,\\d+\\s\\+\\d+,\\d+\\s@@$");
+	
 	/**
 	 * Find the next line among the set of lines[] that looks like a Patch Index: line.
 	 * @param lines	the lines in which to look for the patch start.
 	 * @param start the starting line number from where to start the search.
 	 * @return the linenumber where we found the next patch start from {@link start}.
 	 */
-	private int findNextIndex(String[] lines, int start) {
+	private int findNextIndex(LineIndex lines, int start) {
 		int found = -1;
-		for (int i=start; i < lines.length-1; i++) {
+		for (int i=start; i < lines.getLineCount()-1; i++) {
 			// Find the next line that starts with "Index: "
-			if (lines[i].startsWith("Index: ")) {
+			if (lines.lineStartsWith(i, "Index: ")) {
 				// Check if the following line starts with "====="
-				if (lines[i+1].startsWith("====")) {
+				if (lines.lineStartsWith(i+1, "====")) {
 					found = i;
 					break;
 				}
@@ -41,13 +45,14 @@ public class PatchParser {
 	 * Find the next Hunk start beginning from {@link start} in a set of {@link lines}.
 	 * @param lines The lines to search for the next Hunk start.
 	 * @param start The line from which to start looking for the next Hunk.
+	 * @param end The line before which to stop looking.
 	 * @return The linenumber where the next Hunk start was found.
 	 */
-	private int findNextHunkHeader(String[] lines, int start) {
+	private int findNextHunkHeader(LineIndex lines, int start, int end) {
 		int found = -1;
-		for (int i=start; i < lines.length; i++) {
+		for (int i=start; i < end; i++) {
 			// Find the next line that matches @@ -X,Y +XX,YY @@
-			if (lines[i].matches("^@@\\s\\-\\d+,\\d+\\s\\+\\d+,\\d+\\s@@$")) {
+			if (lines.lineStartsWith(i, "@@") && HUNK_HEADER.matcher(lines.getLine(i)).matches()) {
 				found = i;
 				break;
 			}
@@ -56,16 +61,13 @@ public class PatchParser {
 	}
 	
 	/**
-	 * Splits a text into a List of possible Patches.
-	 * @param text The text to split into patches.
-	 * @return a List of possible Patches.
+	 * Splits a text into ranges of lines that possibly hold a Patch.
+	 * @param lines The lines of the text to split into patches.
+	 * @return a List of possible Patches, each given as its first line and the line after its last one.
 	 */
-	private List<String> partitionByIndex(String text) {
+	private List<int[]> partitionByIndex(LineIndex lines) {
 		// This will be a list of all potential Patch Areas
-		List<String> indexPartition = new ArrayList<String>();
-		
-		// Split the complete text into single lines to work with
-		String[] lines = text.split("[\n\r]");
+		List<int[]> indexPartition = new ArrayList<int[]>();
 		
 		// When we start we think there are more Patches inside ;)
 		boolean hasMore = true;
@@ -84,19 +86,14 @@ public class PatchParser {
 				int idxEnd = findNextIndex(lines, idxStart +1);
 				if (idxEnd == -1) {
 					// add the whole range because there is no more next idx start
-					String range = "";
-					for (int i = idxStart; i < lines.length -1; i++) {
-						range = range + lines[i] + System.getProperty("line.separator");
-					}
-					range = range + lines[lines.length-1];
-					indexPartition.add(range);
+					indexPartition.add(new int[] {idxStart, lines.getLineCount()});
 				} else {
-					// there is another index start so add the range to the partition
-					String range = "";
-					for (int i = idxStart; i < idxEnd; i++) {
-						range = range + lines[i] + System.getProperty("line.separator");
-					}
-					indexPartition.add(range);
+					// there is another index start so add the range to the partition,
+					// without the empty lines at its end
+					int rangeEnd = idxEnd;
+					while (rangeEnd > idxStart && lines.getLineLength(rangeEnd-1) == 0)
+						rangeEnd--;
+					indexPartition.add(new int[] {idxStart, rangeEnd});
 					
 					// and set the new idxStart to end !
 					idxStart = idxEnd -1;
@@ -110,14 +107,15 @@ public class PatchParser {
 	/**
 	 * Find the first line that starts with a given String
 	 * @param text The text the line we look for starts with
-	 * @param lines An Array of lines
+	 * @param lines The lines of the text
 	 * @param start The line number to start the search with
+	 * @param end The line number to stop the search before
 	 * @return The index of the first line starting at {@link start} or -1 if there is no such line
 	 */
-	private int findFirstLineBeginningWith(String text, String[] lines, int start) {
+	private int findFirstLineBeginningWith(String text, LineIndex lines, int start, int end) {
 		int found = -1;
-		for (int i=start; i < lines.length; i++) {
-			if (lines[i].startsWith(text)) {
+		for (int i=start; i < end; i++) {
+			if (lines.lineStartsWith(i, text)) {
 				found = i;
 				break;
 			}
@@ -129,45 +127,43 @@ public class PatchParser {
 	/**
 	 * Find the first line that starts with a given String
 	 * @param text The text the line we look for starts with
-	 * @param lines An Array of lines
+	 * @param lines The lines of the text
 	 * @param start The line number to start the search with
+	 * @param end The line number to stop the search before
 	 * @return The first line starting at {@link start} or an empty String if there is no such line
 	 */
-	private String findFirstLineBeginningWithS(String text, String[] lines, int start) {
-		String found = "";
-		for (int i=start; i < lines.length; i++) {
-			if (lines[i].startsWith(text)) {
-				found = lines[i];
-				break;
-			}
-		}
-		return found;
+	private String findFirstLineBeginningWithS(String text, LineIndex lines, int start, int end) {
+		int found = findFirstLineBeginningWith(text, lines, start, end);
+		return (found == -1) ? "" : lines.getLine(found);
 	}
 	
 	
 	/**
 	 * Checks whether the given line is a line that belongs to a hunk or not.
+	 * @param lines The lines of the text
 	 * @param line the line to check for being a Hunk Line.
 	 * @return true if the {@link line} is a Hunk line, false otherwise.
 	 */
-	private boolean isHunkLine(String line) {
-		boolean isHunkLine = ((line.startsWith("+")) || (line.startsWith("-")) || (line.startsWith(" ")));
+	private boolean isHunkLine(LineIndex lines, int line) {
+		boolean isHunkLine = ((lines.lineStartsWith(line, "+")) || (lines.lineStartsWith(line, "-")) || (lines.lineStartsWith(line, " ")));
 		return isHunkLine;
 	}
 	
 	/**
 	 * Find and extract all Hunks in a Patch
-	 * @param lines A set of Patch Lines
+	 * @param lines The lines of the text
 	 * @param start The line to start looking for Hunks
-	 * @return a List<PatchHunk> of Hunks that were found
+	 * @param end The line after the last line of the Patch
+	 * @param foundHunks a List<PatchHunk> the Hunks that were found are added to
+	 * @return the position in the text where the last Hunk ends
 	 */
-	private List<PatchHunk> findAllHunks(String[] lines, int start) {
-		List<PatchHunk> foundHunks = new ArrayList<PatchHunk>();
+	private int findAllHunks(LineIndex lines, int start, int end, List<PatchHunk> foundHunks) {
 		String lineSep = System.getProperty("line.separator");
+		int hunkEnd = -1;
 		int hStart = start-1;
 		boolean hasMore = true;
 		while (hasMore) {
-			hStart = findNextHunkHeader(lines, hStart+1);
+			hStart = findNextHunkHeader(lines, hStart+1, end);
 			// Check if there are more Hunks
 			if (hStart == -1) {
 				// If there are no more Hunks then we are finished
@@ -176,12 +172,12 @@ public class PatchParser {
 			} else {
 				// If there are then look for the next Hunk start
 				if (debug) System.out.println("<>>> Hunk Start is " + hStart);
-				int nextHunkStart = findNextHunkHeader(lines, hStart + 1);
+				int nextHunkStart = findNextHunkHeader(lines, hStart + 1, end);
 				int searchEnd = 0;
 				if (nextHunkStart == -1) {
 					if (debug) System.out.println("<>>> There are no more Hunks!");
 					// If there is no next Hunk we can process until the end
-					searchEnd = lines.length;
+					searchEnd = end;
 					hasMore = false;
 				} else {
 					if (debug) System.out.println("<>>> There are more Hunks left!");
@@ -189,17 +185,21 @@ public class PatchParser {
 					searchEnd = nextHunkStart -1;
 				}
 					if (debug) System.out.println("<>>> Will look for HunkLines from " + (hStart+1) + " to " + (searchEnd-1));
-					String hunktext = "";
+					StringBuilder hunktext = new StringBuilder();
+					// An empty Hunk ends with its header
+					hunkEnd = lines.getLineEnd(hStart);
 					for (int i = hStart +1; i < searchEnd; i++) {
-						if (debug) System.out.println("<>>> Checking if Hunkline: " + lines[i]);
-						if (isHunkLine(lines[i])) { 
+						if (debug) System.out.println("<>>> Checking if Hunkline: " + lines.getLine(i));
+						if (isHunkLine(lines, i)) { 
 							if (debug) System.out.println("<>>> Yes it is!");
-							hunktext = hunktext + lines[i] + lineSep;
+							hunktext.append(lines.getText(), lines.getLineStart(i), lines.getLineEnd(i)).append(lineSep);
+							hunkEnd = lines.getLineEnd(i);
 						} else {
 							if (i < searchEnd -1) {
-								if (isHunkLine(lines[i+1])) {
+								if (isHunkLine(lines, i+1)) {
 									if (debug) System.out.println("<>>> No But next line is!");
-									hunktext = hunktext + lines[i] + lineSep;
+									hunktext.append(lines.getText(), lines.getLineStart(i), lines.getLineEnd(i)).append(lineSep);
+									hunkEnd = lines.getLineEnd(i);
 								}
 								else {
 									// we are done
@@ -211,12 +211,12 @@ public class PatchParser {
 					}
 					// Kill last newline
 					if (hunktext.length() > 1)
-						hunktext = hunktext.substring(0, hunktext.length()-1);
-					foundHunks.add(new PatchHunk(hunktext));	
+						hunktext.setLength(hunktext.length()-1);
+					foundHunks.add(new PatchHunk(hunktext.toString()));	
 					hStart = nextHunkStart -1;
 				}
 			}
-		return foundHunks;
+		return hunkEnd;
 	}
 	
 	/**
@@ -225,59 +225,63 @@ public class PatchParser {
 	 * @return a list of {@link foundPatches}.
 	 */
 	public List<Patch> parseForPatches(String text) {
+		return parseForPatches(new LineIndex(text));
+	}
+	
+	/**
+	 * Parses a given text for all Patches inside using a 2 line lookahead Fuzzy Parser approach.
+	 * @param lines The lines of the text to extract Patches from.
+	 * @return a list of {@link foundPatches}.
+	 */
+	public List<Patch> parseForPatches(LineIndex lines) {
 		// Start with an empty list of Patches
 		List<Patch> foundPatches = new ArrayList<Patch>();
 
 		// First Partition the whole given text into sections starting with Index:
 		// The parts of the partition mark on potential patch
-		List<String> indexPartition = partitionByIndex(text);
+		List<int[]> indexPartition = partitionByIndex(lines);
 		
 		// For each potential patch area split into header and a list of potential hunks
-		for (String potentialPatch : indexPartition) {
-			String[] lines = potentialPatch.split("[\n\r]");
+		for (int[] potentialPatch : indexPartition) {
+			int first = potentialPatch[0];
+			int end = potentialPatch[1];
 			
 			Patch patch = new Patch();
 			// Gather Header Information of the Patch
-			String pIndex = findFirstLineBeginningWithS("Index: ", lines, 0);
+			String pIndex = findFirstLineBeginningWithS("Index: ", lines, first, end);
 			patch.setIndex(pIndex);
-			String pOrig  = findFirstLineBeginningWithS("--- ", lines, 0);
+			String pOrig  = findFirstLineBeginningWithS("--- ", lines, first, end);
 			patch.setOriginalFile(pOrig);
-			String pModi  = findFirstLineBeginningWithS("+++ ", lines, 0);
+			String pModi  = findFirstLineBeginningWithS("+++ ", lines, first, end);
 			patch.setModifiedFile(pModi);
 			
 			// Find the first Hunk Header
-			int    pModiNum = findFirstLineBeginningWith("+++ ", lines, 0);
-			int firstHunkLine = findNextHunkHeader(lines, pModiNum + 1);
+			int    pModiNum = findFirstLineBeginningWith("+++ ", lines, first, end);
+			int firstHunkLine = findNextHunkHeader(lines, (pModiNum == -1) ? first : pModiNum + 1, end);
 			
 			// If there is no Hunk then the patch is invalid!
 			if (firstHunkLine == -1)
 				break;
 			
 			// Now we can add the complete Header
-			String header = "";
-			for (int i=0; i < firstHunkLine-1; i++) {
-				header = header + lines[i] + System.getProperty("line.separator");
+			StringBuilder header = new StringBuilder();
+			for (int i=first; i < firstHunkLine-1; i++) {
+				header.append(lines.getText(), lines.getLineStart(i), lines.getLineEnd(i)).append(System.getProperty("line.separator"));
 			}
-			header = header + lines[firstHunkLine-1];
-			patch.setHeader(header);
+			header.append(lines.getText(), lines.getLineStart(firstHunkLine-1), lines.getLineEnd(firstHunkLine-1));
+			patch.setHeader(header.toString());
 			
 			// Discover all Hunks!
-			List<PatchHunk> hunks = findAllHunks(lines, firstHunkLine);
+			List<PatchHunk> hunks = new ArrayList<PatchHunk>();
+			int patchEnd = findAllHunks(lines, firstHunkLine, end, hunks);
 			
 			// And add the Hunks to the List of Hunks for this patch
 			for (PatchHunk h : hunks) patch.addHunk(h);
-			foundPatches.add(patch);
-		}
-		
-		// Locate the Patches in the Source Code
-		for (Patch p : foundPatches) {
-			int patchStart = text.indexOf(p.getHeader());
 			
-			int patchEnd = text.lastIndexOf(p.getHunks().get(p.getHunks().size()-1).getText())
-							+ p.getHunks().get(p.getHunks().size()-1).getText().length();
-			
-			p.setStartPosition(patchStart);
-			p.setEndPosition(patchEnd);
+			// Locate the Patch in the text: from its first header line to the end of its last Hunk
+			patch.setStartPosition(lines.getLineStart(first));
+			patch.setEndPosition(patchEnd);
+			foundPatches.add(patch);
 		}
 		
 		// Here is the patch we found
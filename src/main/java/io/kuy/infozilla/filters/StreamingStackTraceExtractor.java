@@ -0,0 +1,275 @@
+/**
+ * StreamingStackTraceExtractor.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+
+/**
+ * Finds the Java stack traces in a text of any size, such as a log file of several gigabytes,
+ * while reading it. The text is read through a window that only holds the lines since the start
+ * of the trace that is being put together, or the current line if there is none, so the memory
+ * needed is bounded by the longest trace and the longest line, not by the size of the text.
+ * Every trace is handed out as soon as the line after it was read.
+ * <p>
+ * The traces are found by the {@link JavaStackTraceLexer}, the same way as with
+ * <code>new FilterStackTraceJAVA(true)</code>. Windows (<code>\r\n</code>), old Mac
+ * (<code>\r</code>) and Linux (<code>\n</code>) line breaks each count as one line break, and
+ * positions are counted in the characters of the reader, line breaks included.
+ * A cause is linked to the trace it was printed under.
+ * <p>
+ * The positions of a trace may not fit into the int offsets of a {@link StackTrace} in a text this
+ * large. {@link #getTraceStart()} and {@link #getTraceEnd()} give them for the trace read last.
+ * @author Nicolas Bettenburg
+ *
+ */
+public class StreamingStackTraceExtractor implements Closeable {
+
+	private final Reader reader;
+	private final char[] buffer = new char[8192];
+	private int bufferPosition;
+	private int bufferLength;
+	private boolean endOfInput;
+
+	/** The window of the text, and where it starts in the text */
+	private final StringBuilder window = new StringBuilder();
+	private long windowStart;
+
+	/** Where the lines in the window start, end and where their line break ends, in the window */
+	private int[] lineStarts = new int[64];
+	private int[] lineEnds = new int[64];
+	private int[] breakEnds = new int[64];
+	private int lineCount;
+
+	/** The next line for the lexer to look at */
+	private int nextLine;
+	private boolean finished;
+
+	private final JavaStackTraceLexer lexer;
+	private final List<StackTrace> found = new ArrayList<StackTrace>();
+	private final Deque<StackTrace> ready = new ArrayDeque<StackTrace>();
+	private final Deque<long[]> readySpans = new ArrayDeque<long[]>();
+
+	private long traceStart = -1;
+	private long traceEnd = -1;
+
+	/**
+	 * @param reader the text to find the traces in
+	 */
+	public StreamingStackTraceExtractor(Reader reader) {
+		this.reader = reader;
+		this.lexer = new JavaStackTraceLexer(new JavaStackTraceLexer.Lines() {
+			public boolean hasLine(int line) {
+				return ensureLine(line);
+			}
+
+			public int getLineStart(int line) {
+				return lineStarts[line];
+			}
+
+			public int getLineEnd(int line) {
+				return lineEnds[line];
+			}
+
+			public int getBreakEnd(int line) {
+				return breakEnds[line];
+			}
+		}, window, found, null);
+	}
+
+	/**
+	 * Read up to the end of the next trace.
+	 * @return the next trace or cause, or null at the end of the text
+	 * @throws IOException if the text cannot be read
+	 */
+	public StackTrace read() throws IOException {
+		try {
+			while (ready.isEmpty() && !finished) {
+				if (!ensureLine(nextLine)) {
+					lexer.end();
+					finished = true;
+					collect();
+				} else {
+					nextLine = lexer.step(nextLine);
+					// The positions of the traces found are in the window before it moves on
+					collect();
+					if (!lexer.inTrace())
+						compact();
+				}
+			}
+		} catch (UncheckedRead e) {
+			throw e.getCause();
+		}
+		if (ready.isEmpty())
+			return null;
+		long[] span = readySpans.removeFirst();
+		traceStart = span[0];
+		traceEnd = span[1];
+		return ready.removeFirst();
+	}
+
+	/**
+	 * Read all traces up to the end of the text.
+	 * @return the traces and causes in the order they appear in the text
+	 * @throws IOException if the text cannot be read
+	 */
+	public List<StackTrace> readAll() throws IOException {
+		List<StackTrace> traces = new ArrayList<StackTrace>();
+		for (StackTrace trace = read(); trace != null; trace = read())
+			traces.add(trace);
+		return traces;
+	}
+
+	/**
+	 * @return the position in the text where the trace read last starts, -1 before the first one
+	 */
+	public long getTraceStart() {
+		return traceStart;
+	}
+
+	/**
+	 * @return the position in the text right behind the trace read last and its line break, -1 before the first one
+	 */
+	public long getTraceEnd() {
+		return traceEnd;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Move the traces the lexer found over to the ones ready to be read, with their positions
+	 * in the text. Their own offsets are set as well, if they fit.
+	 */
+	private void collect() {
+		for (StackTrace trace : found) {
+			long start = windowStart + trace.getTraceStart();
+			long end = windowStart + trace.getTraceEnd();
+			boolean fits = end <= Integer.MAX_VALUE;
+			trace.setTraceStart(fits ? (int) start : -1);
+			trace.setTraceEnd(fits ? (int) end : -1);
+			ready.addLast(trace);
+			readySpans.addLast(new long[] { start, end });
+		}
+		found.clear();
+	}
+
+	/**
+	 * Forget the lines before the next one, while no trace is being put together.
+	 */
+	private void compact() {
+		if (nextLine == 0)
+			return;
+		int chars = (nextLine < lineCount) ? lineStarts[nextLine] : window.length();
+		window.delete(0, chars);
+		windowStart += chars;
+		int kept = lineCount - nextLine;
+		for (int i = 0; i < kept; i++) {
+			lineStarts[i] = lineStarts[nextLine + i] - chars;
+			lineEnds[i] = lineEnds[nextLine + i] - chars;
+			breakEnds[i] = breakEnds[nextLine + i] - chars;
+		}
+		lineCount = kept;
+		nextLine = 0;
+	}
+
+	/**
+	 * Read lines into the window until it holds the given one.
+	 * @return false if the text ends before the line
+	 */
+	private boolean ensureLine(int line) {
+		try {
+			while (line >= lineCount) {
+				if (!readLine())
+					return false;
+			}
+			return true;
+		} catch (IOException e) {
+			// The lexer cannot throw it, read() unwraps it again
+			throw new UncheckedRead(e);
+		}
+	}
+
+	/**
+	 * Read the next line and its line break into the window.
+	 * @return false if there is no more line
+	 */
+	private boolean readLine() throws IOException {
+		int start = window.length();
+		while (true) {
+			if (bufferPosition == bufferLength && !fill()) {
+				if (window.length() == start)
+					return false;
+				addLine(start, window.length(), window.length());
+				return true;
+			}
+			char c = buffer[bufferPosition++];
+			if (c == '\n' || c == '\r') {
+				int end = window.length();
+				window.append(c);
+				// A line feed right after a carriage return is part of the same line break
+				if (c == '\r' && (bufferPosition < bufferLength || fill()) && buffer[bufferPosition] == '\n') {
+					window.append('\n');
+					bufferPosition++;
+				}
+				addLine(start, end, window.length());
+				return true;
+			}
+			window.append(c);
+		}
+	}
+
+	private boolean fill() throws IOException {
+		if (endOfInput)
+			return false;
+		int n = reader.read(buffer);
+		while (n == 0)
+			n = reader.read(buffer);
+		if (n < 0) {
+			endOfInput = true;
+			return false;
+		}
+		bufferPosition = 0;
+		bufferLength = n;
+		return true;
+	}
+
+	private void addLine(int start, int end, int breakEnd) {
+		if (lineCount == lineStarts.length) {
+			lineStarts = Arrays.copyOf(lineStarts, 2 * lineCount);
+			lineEnds = Arrays.copyOf(lineEnds, 2 * lineCount);
+			breakEnds = Arrays.copyOf(breakEnds, 2 * lineCount);
+		}
+		lineStarts[lineCount] = start;
+		lineEnds[lineCount] = end;
+		breakEnds[lineCount] = breakEnd;
+		lineCount++;
+	}
+
+	/**
+	 * Carries an IOException through the lexer, which reads lines without declaring it.
+	 */
+	private static final class UncheckedRead extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		UncheckedRead(IOException cause) {
+			super(cause);
+		}
+
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+/**
+ * TextFeatures.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+/**
+ * A few literals some filters cannot do without, found in one cheap pass over a text. A filter
+ * whose patterns need a literal the text does not contain cannot find anything, and skips its
+ * regular expressions altogether. Most bug reports hold neither patches nor Talkback traces,
+ * and text-only reports hold no structural elements at all.
+ * <p>
+ * Every feature is a necessary condition only: a text that has it may still hold no elements.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class TextFeatures {
+
+	/** "@@", every hunk of a patch starts with it */
+	public static final int HUNK_HEADER = 1;
+
+	/** "Exception" or "Error", every Java stack trace and cause names one */
+	public static final int EXCEPTION_NAME = 1 << 1;
+
+	/** "line" followed by a number, as in the frames of a Talkback trace */
+	public static final int LINE_NUMBER = 1 << 2;
+
+	/** "()", as in the method calls of a Talkback trace */
+	public static final int EMPTY_CALL = 1 << 3;
+
+	/** A digit followed by 'x', as in the hexadecimal addresses of a Talkback trace */
+	public static final int HEX_NUMBER = 1 << 4;
+
+	/** ';', '{', "//" or "/*", the punctuation of Java source code */
+	public static final int CODE_PUNCTUATION = 1 << 5;
+
+	private static final int ALL = (1 << 6) - 1;
+
+	private final int features;
+
+	private TextFeatures(int features) {
+		this.features = features;
+	}
+
+	/**
+	 * Look for all features in a single pass over a text.
+	 * @param text the text to look at
+	 * @return the features of the text
+	 */
+	public static TextFeatures scan(CharSequence text) {
+		int features = 0;
+		int length = text.length();
+		for (int i = 0; i < length && features != ALL; i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '@':
+				if (i + 1 < length && text.charAt(i + 1) == '@')
+					features |= HUNK_HEADER;
+				break;
+			case 'E':
+				if (startsWith(text, i, "Exception") || startsWith(text, i, "Error"))
+					features |= EXCEPTION_NAME;
+				break;
+			case 'l':
+				if (startsWith(text, i, "line") && isLineNumber(text, i + 4))
+					features |= LINE_NUMBER;
+				break;
+			case '(':
+				if (i + 1 < length && text.charAt(i + 1) == ')')
+					features |= EMPTY_CALL;
+				break;
+			case 'x':
+				if (i > 0 && Character.isDigit(text.charAt(i - 1)))
+					features |= HEX_NUMBER;
+				break;
+			case ';':
+			case '{':
+				features |= CODE_PUNCTUATION;
+				break;
+			case '/':
+				if (i + 1 < length && (text.charAt(i + 1) == '/' || text.charAt(i + 1) == '*'))
+					features |= CODE_PUNCTUATION;
+				break;
+			default:
+				break;
+			}
+		}
+		return new TextFeatures(features);
+	}
+
+	private static boolean startsWith(CharSequence text, int start, String literal) {
+		if (start + literal.length() > text.length())
+			return false;
+		for (int i = 0; i < literal.length(); i++) {
+			if (text.charAt(start + i) != literal.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Whether a number follows, after any blanks and line breaks, like the Talkback patterns allow
+	 */
+	private static boolean isLineNumber(CharSequence text, int start) {
+		for (int i = start; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c != ' ' && c != '\n' && c != '\r')
+				return c >= '0' && c <= '9';
+		}
+		return false;
+	}
+
+	/**
+	 * @param feature one or more of the feature constants
+	 * @return whether the text has any of the given features
+	 */
+	public boolean hasAny(int feature) {
+		return (features & feature) != 0;
+	}
+
+	/**
+	 * @param feature one or more of the feature constants
+	 * @return whether the text has all of the given features
+	 */
+	public boolean hasAll(int feature) {
+		return (features & feature) == feature;
+	}
+
+	/**
+	 * @param name the name of a feature constant, such as "CODE_PUNCTUATION"
+	 * @return the feature constant, or 0 if there is none with that name
+	 */
+	public static int forName(String name) {
+		if (name.equals("HUNK_HEADER"))
+			return HUNK_HEADER;
+		if (name.equals("EXCEPTION_NAME"))
+			return EXCEPTION_NAME;
+		if (name.equals("LINE_NUMBER"))
+			return LINE_NUMBER;
+		if (name.equals("EMPTY_CALL"))
+			return EMPTY_CALL;
+		if (name.equals("HEX_NUMBER"))
+			return HEX_NUMBER;
+		if (name.equals("CODE_PUNCTUATION"))
+			return CODE_PUNCTUATION;
+		return 0;
+	}
+
+	/**
+	 * @return whether the text may contain a patch
+	 */
+	public boolean mayContainPatches() {
+		return hasAny(HUNK_HEADER);
+	}
+
+	/**
+	 * @return whether the text may contain a Java stack trace
+	 */
+	public boolean mayContainJavaTraces() {
+		return hasAny(EXCEPTION_NAME);
+	}
+
+	/**
+	 * @return whether the text may contain a Talkback trace
+	 */
+	public boolean mayContainTalkbackTraces() {
+		return hasAny(LINE_NUMBER | EMPTY_CALL | HEX_NUMBER);
+	}
+
+}
@@ -0,0 +1,42 @@
+/**
+ * TextSpan.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.filters;
+
+/**
+ * An immutable range of characters <code>[start, end)</code> in a text, 
+ * typically a structural element a filter wants to have removed from its input.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class TextSpan {
+
+	private final int start;
+	private final int end;
+	
+	public TextSpan(int start, int end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return the first character of the span
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the character after the last character of the span
+	 */
+	public int getEnd() {
+		return end;
+	}
+	
+	@Override
+	public String toString() {
+		return "[" + start + "," + end + ")";
+	}
+	
+}
@@ -7,7 +7,9 @@ package io.kuy.infozilla.helpers;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jdom.Attribute;
 import org.jdom.Element;
@@ -17,10 +19,30 @@ import io.kuy.infozilla.elements.patch.Patch;
 import io.kuy.infozilla.elements.patch.PatchHunk;
 import io.kuy.infozilla.elements.sourcecode.java.CodeRegion;
 import io.kuy.infozilla.elements.stacktrace.java.StackTrace;
+import io.kuy.infozilla.filters.FilterChainResult;
 
 public class DataExportUtility {
 	
 	
+	/**
+	 * Get an XML Export of everything a filter chain extracted from a single input
+	 * @param result the {@link FilterChainResult} that should be exported
+	 * @param ts the timestamp to record for the stack traces
+	 * @return an Element "infozilla-output" containing the patches, stack traces, source code regions and enumerations
+	 */
+	public static final Element getXMLExport(FilterChainResult result, Timestamp ts) {
+		Element rootE = new Element("infozilla-output");
+		// Mark results that may miss elements because a filter ran out of its regular expression budget
+		if (result.isPartial())
+			rootE.setAttribute(new Attribute("partial", "true"));
+		rootE.addContent(getXMLExportOfPatches(result.getPatches(), true));
+		rootE.addContent(getXMLExportOfStackTraces(result.getTraces(), true, ts));
+		rootE.addContent(getXMLExportOfSourceCode(result.getRegions(), true));
+		rootE.addContent(getXMLExportOfEnumerations(result.getEnumerations(), true));
+		return rootE;
+	}
+	
+	
 	/**
 	 * Get an XML Export of a list of Stack Traces
 	 * @param traces a List of {@link StackTrace} that should be exported as a new XML node
@@ -30,6 +52,11 @@ public class DataExportUtility {
 		Element rootE = new Element("Stacktraces");
 		rootE.setAttribute(new Attribute("amount", Integer.toString(traces.size())));
 
+		// Remember where each trace is in the list, so that causes can point to their enclosing trace
+		Map<StackTrace, Integer> positions = new IdentityHashMap<StackTrace, Integer>();
+		for (int i = 0; i < traces.size(); i++)
+			positions.put(traces.get(i), Integer.valueOf(i));
+		
 		// Add each Stack Traces to the JDOM Tree
 		for (StackTrace trace : traces) {
 			
@@ -41,6 +68,10 @@ public class DataExportUtility {
 				traceE = new Element("Stacktrace");
 			
 			traceE.setAttribute(new Attribute("timestamp", Long.toString(ts.getTime())));
+			traceE.setAttribute(new Attribute("fingerprint", trace.getFingerprint().toHex()));
+			Integer parent = positions.get(trace.getParent());
+			if (parent != null)
+				traceE.setAttribute(new Attribute("parent", parent.toString()));
 			// Add the Originating Exception
 			Element exceptionE = new Element("Exception");
 			exceptionE.setText(trace.getException());
@@ -63,6 +94,13 @@ public class DataExportUtility {
 					depth++;
 				}
 				traceE.addContent(framesE);
+				
+				// The frames a cause has in common with its enclosing trace are not repeated
+				if (trace.getCommonFrames() > 0) {
+					Element commonE = new Element("CommonFrames");
+					commonE.setText(Integer.toString(trace.getCommonFrames()));
+					traceE.addContent(commonE);
+				}
 			}
 			
 			// Add this Stack Trace to the Root Element
@@ -85,6 +123,7 @@ public class DataExportUtility {
 			traceE = new Element("Stacktrace");
 		
 		traceE.setAttribute(new Attribute("timestamp", Long.toString(ts.getTime())));
+		traceE.setAttribute(new Attribute("fingerprint", trace.getFingerprint().toHex()));
 		// Add the Originating Exception
 		Element exceptionE = new Element("Exception");
 		exceptionE.setText(trace.getException());
@@ -107,6 +146,13 @@ public class DataExportUtility {
 				depth++;
 			}
 			traceE.addContent(framesE);
+			
+			// The frames a cause has in common with its enclosing trace are not repeated
+			if (trace.getCommonFrames() > 0) {
+				Element commonE = new Element("CommonFrames");
+				commonE.setText(Integer.toString(trace.getCommonFrames()));
+				traceE.addContent(commonE);
+			}
 		}
 		
 		// Add this Stack Trace to the Root Element
@@ -0,0 +1,183 @@
+/**
+ * LinuxNewlineReader.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import io.kuy.infozilla.filters.OffsetMap;
+
+/**
+ * A reader that turns Windows and old Mac line breaks into Linux ones while it reads, the same way
+ * {@link RegExHelper#makeLinuxNewlines(String)} does: a carriage return reads as a line feed, and
+ * a line feed right after a carriage return is dropped. Put on top of the reader that decodes a
+ * document, the newlines are normalized in the same pass, and the filter chains get a text they
+ * do not need to copy again.
+ * <p>
+ * When asked to, the reader remembers which line feeds it dropped, so that positions in the
+ * text it read can be translated back to positions in the decoded document, see {@link #getOffsetMap()}.
+ * For a single byte character set those are the positions of the bytes.
+ * @author Nicolas Bettenburg
+ *
+ */
+public class LinuxNewlineReader extends FilterReader {
+
+	/** Whether the last character read was a carriage return */
+	private boolean afterCR;
+
+	/** How many characters were read from the underlying reader */
+	private int position;
+
+	/** The positions of the dropped line feeds in the underlying reader, null if they are not kept */
+	private int[] dropped;
+	private int numDropped;
+
+	/**
+	 * @param in the reader to normalize the newlines of
+	 */
+	public LinuxNewlineReader(Reader in) {
+		this(in, false);
+	}
+
+	/**
+	 * @param in the reader to normalize the newlines of
+	 * @param keepOffsets whether to remember the dropped line feeds for {@link #getOffsetMap()}
+	 */
+	public LinuxNewlineReader(Reader in, boolean keepOffsets) {
+		super(in);
+		this.afterCR = false;
+		this.position = 0;
+		this.dropped = keepOffsets ? new int[16] : null;
+		this.numDropped = 0;
+	}
+
+	/**
+	 * Read a whole file and normalize its newlines in one pass, failing on bytes that do
+	 * not decode, like {@link Files#readString(Path, Charset)}.
+	 * @param path the file to read
+	 * @param charset the character set of the file
+	 * @return the text of the file, with Linux newlines
+	 * @throws IOException if the file cannot be read or does not decode
+	 */
+	public static String readString(Path path, Charset charset) throws IOException {
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		try (InputStream input = Files.newInputStream(path)) {
+			return readAll(new InputStreamReader(input, decoder), Files.size(path));
+		}
+	}
+
+	/**
+	 * Decode a document and normalize its newlines in one pass, replacing bytes that do
+	 * not decode, like {@link String#String(byte[], Charset)}.
+	 * @param bytes the document
+	 * @param charset the character set of the document
+	 * @return the text of the document, with Linux newlines
+	 */
+	public static String decode(byte[] bytes, Charset charset) {
+		try {
+			return readAll(new InputStreamReader(new ByteArrayInputStream(bytes), charset), bytes.length);
+		} catch (IOException e) {
+			// Reading from memory with replacement does not fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String readAll(Reader decoded, long sizeHint) throws IOException {
+		try (Reader reader = new LinuxNewlineReader(decoded)) {
+			StringBuilder text = new StringBuilder((int) Math.min(sizeHint, Integer.MAX_VALUE - 8));
+			char[] buffer = new char[8192];
+			for (int n = reader.read(buffer); n >= 0; n = reader.read(buffer))
+				text.append(buffer, 0, n);
+			return text.toString();
+		}
+	}
+
+	public int read() throws IOException {
+		char[] c = new char[1];
+		return (read(c, 0, 1) < 0) ? -1 : c[0];
+	}
+
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		while (true) {
+			int n = in.read(cbuf, off, len);
+			if (n < 0)
+				return n;
+			int out = off;
+			for (int i = off; i < off + n; i++) {
+				char c = cbuf[i];
+				if (c == '\n' && afterCR) {
+					// The carriage return before it already became the line feed
+					afterCR = false;
+					drop(position++);
+					continue;
+				}
+				afterCR = (c == '\r');
+				cbuf[out++] = afterCR ? '\n' : c;
+				position++;
+			}
+			// A read that only dropped a line feed has nothing to return yet
+			if (out > off)
+				return out - off;
+		}
+	}
+
+	private void drop(int at) {
+		if (dropped == null)
+			return;
+		if (numDropped == dropped.length)
+			dropped = Arrays.copyOf(dropped, 2 * numDropped);
+		dropped[numDropped++] = at;
+	}
+
+	public long skip(long n) throws IOException {
+		// Skip through read(), so that line breaks are counted the same way
+		char[] buffer = new char[(int) Math.min(Math.max(n, 0), 8192)];
+		long skipped = 0;
+		while (skipped < n) {
+			int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (read < 0)
+				break;
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() is not supported");
+	}
+
+	public void reset() throws IOException {
+		throw new IOException("reset() is not supported");
+	}
+
+	/**
+	 * @return a map from positions in the text read so far to positions in the underlying reader
+	 * @throws IllegalStateException if the reader was not asked to keep the offsets
+	 */
+	public OffsetMap getOffsetMap() {
+		if (dropped == null)
+			throw new IllegalStateException("The reader was created without keeping the offsets");
+		return OffsetMap.withoutCharacters(dropped, numDropped, position);
+	}
+
+}
@@ -0,0 +1,188 @@
+/**
+ * MappedText.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file in a single byte character set, such as ISO-8859-1, presented as a text with Linux newlines.
+ * The file is mapped into memory rather than read, and every character is decoded when it is read,
+ * so a very large document costs hardly any heap until parts of it are copied out.
+ * <p>
+ * The text reads the same as {@link RegExHelper#makeLinuxNewlines(String)} of the decoded file:
+ * a carriage return followed by a line feed is dropped, and any other carriage return reads as
+ * a line feed. The positions of the dropped carriage returns are found once when the file is
+ * mapped. Reading the characters in order costs a constant amount of time per character, since
+ * the text remembers the line break it passed last.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class MappedText implements CharSequence {
+
+	/** Marks the byte values the character set cannot decode */
+	private static final char UNDECODABLE = '\uFFFF';
+
+	private final ByteBuffer bytes;
+	private final char[] decodeTable;
+	private final int length;
+
+	/**
+	 * For every dropped carriage return, the position in this text of the character that
+	 * follows it, in ascending order. A character at position c is read from byte c plus
+	 * the number of entries that are at most c.
+	 */
+	private final int[] dropped;
+	private final int numDropped;
+
+	/**
+	 * The run between two dropped carriage returns that was read last. Runs are immutable,
+	 * so a stale one seen by another thread is still valid, it just does not hold the wanted position.
+	 */
+	private Run lastRun;
+
+	/**
+	 * The characters between two dropped carriage returns, and how far they are from their bytes.
+	 */
+	private static final class Run {
+		final int skipped;
+		final int start;
+		final int end;
+
+		Run(int skipped, int start, int end) {
+			this.skipped = skipped;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private MappedText(ByteBuffer bytes, char[] decodeTable) throws CharacterCodingException {
+		this.bytes = bytes;
+		this.decodeTable = decodeTable;
+
+		// Find the carriage returns to drop, and make sure every byte decodes
+		int size = bytes.limit();
+		int[] found = new int[16];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			char c = decodeTable[bytes.get(i) & 0xFF];
+			if (c == UNDECODABLE)
+				throw new MalformedInputException(1);
+			if (c == '\r' && i + 1 < size && decodeTable[bytes.get(i + 1) & 0xFF] == '\n') {
+				if (count == found.length)
+					found = Arrays.copyOf(found, 2 * count);
+				found[count] = i - count;
+				count++;
+			}
+		}
+		this.dropped = found;
+		this.numDropped = count;
+		this.length = size - count;
+		this.lastRun = run(0);
+	}
+
+	/**
+	 * @param charset a character set
+	 * @return whether files in the character set can be mapped, that is every character is a single byte
+	 */
+	public static boolean supports(Charset charset) {
+		return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f
+				&& charset.newDecoder().maxCharsPerByte() == 1.0f;
+	}
+
+	/**
+	 * Map a file into memory.
+	 * @param path the file to map
+	 * @param charset the character set of the file, see {@link #supports(Charset)}
+	 * @return the text of the file, with Linux newlines
+	 * @throws IOException if the file cannot be mapped, is too large, or holds bytes the character set cannot decode
+	 */
+	public static MappedText map(Path path, Charset charset) throws IOException {
+		if (!supports(charset))
+			throw new IllegalArgumentException(charset.name() + " is not a single byte character set");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException(path + " is too large to map, it has " + size + " bytes");
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			return new MappedText(bytes, decodeTable(charset));
+		}
+	}
+
+	/**
+	 * Decode every byte value once.
+	 */
+	private static char[] decodeTable(Charset charset) {
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		char[] table = new char[256];
+		for (int b = 0; b < 256; b++) {
+			try {
+				String decoded = decoder.reset().decode(ByteBuffer.wrap(new byte[] { (byte) b })).toString();
+				table[b] = decoded.length() == 1 ? decoded.charAt(0) : UNDECODABLE;
+			} catch (CharacterCodingException e) {
+				table[b] = UNDECODABLE;
+			}
+		}
+		return table;
+	}
+
+	private Run run(int index) {
+		int start = (index == 0) ? 0 : dropped[index - 1];
+		int end = (index < numDropped) ? dropped[index] : length;
+		return new Run(index, start, end);
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public char charAt(int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		Run current = lastRun;
+		if (index < current.start || index >= current.end) {
+			Run next = (index >= current.end && current.skipped < numDropped) ? run(current.skipped + 1) : null;
+			if (next != null && index < next.end) {
+				// Reading in order moves on to the next run
+				current = next;
+			} else {
+				// Count the entries that are at most index
+				int found = Arrays.binarySearch(dropped, 0, numDropped, index);
+				current = run(found >= 0 ? found + 1 : -found - 1);
+			}
+			lastRun = current;
+		}
+		char c = decodeTable[bytes.get(index + current.skipped) & 0xFF];
+		// The carriage returns left are not followed by a line feed
+		return (c == '\r') ? '\n' : c;
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		char[] chars = new char[end - start];
+		for (int i = start; i < end; i++)
+			chars[i - start] = charAt(i);
+		return new String(chars);
+	}
+
+	public String toString() {
+		return subSequence(0, length).toString();
+	}
+
+}
@@ -4,27 +4,212 @@
  */
 package io.kuy.infozilla.helpers;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class RegExHelper {
 
-	public static Iterable<MatchResult> findMatches(final Pattern p,
-			CharSequence s) {
-		List<MatchResult> results = new ArrayList<MatchResult>();
-
-		for (Matcher m = p.matcher(s); m.find();) {
-			results.add(m.toMatchResult());
+	/**
+	 * Iterate over all matches of a pattern, without a budget. Each match is searched for only
+	 * when the iteration gets to it.
+	 * @param p the pattern to search for
+	 * @param s the text to search in
+	 * @return the matches
+	 */
+	public static Iterable<MatchResult> findMatches(final Pattern p, CharSequence s) {
+		return matches(p, s, RegexBudget.unlimited());
+	}
+	
+	/**
+	 * Find the first match of a pattern, within a budget.
+	 * @param p the pattern to search for
+	 * @param s the text to search in
+	 * @param budget the budget the search counts against
+	 * @return the first match, or null if there is none or the budget ran out before it was found
+	 */
+	public static MatchResult findFirst(final Pattern p, CharSequence s, RegexBudget budget) {
+		Iterator<MatchResult> matches = matches(p, s, budget).iterator();
+		return matches.hasNext() ? matches.next() : null;
+	}
+	
+	/**
+	 * Iterate over the matches of a pattern, within a budget. Each match is searched for only when
+	 * the iteration gets to it, so a caller that stops early saves the rest of the search, and
+	 * a caller that drops the matches it looked at does not keep them all in memory.
+	 * @param p the pattern to search for
+	 * @param s the text to search in
+	 * @param budget the budget the search counts against
+	 * @return the matches, which end when the budget runs out or the pattern overflows the stack
+	 */
+	public static Iterable<MatchResult> matches(final Pattern p, final CharSequence s, final RegexBudget budget) {
+		return matches(p, s, 0, s.length(), budget);
+	}
+	
+	/**
+	 * Iterate over the matches of a pattern in a region of a text, within a budget. The region reads
+	 * like a text of its own, as if it was cut out with subSequence(), but it is not copied and the
+	 * positions of the matches refer to the whole text.
+	 * @param p the pattern to search for
+	 * @param s the text to search in
+	 * @param start the start of the region
+	 * @param end the exclusive end of the region
+	 * @param budget the budget the search counts against
+	 * @return the matches, which end when the budget runs out or the pattern overflows the stack
+	 */
+	public static Iterable<MatchResult> matches(final Pattern p, final CharSequence s, final int start, final int end,
+			final RegexBudget budget) {
+		if (start < 0 || end > s.length() || start > end)
+			throw new IndexOutOfBoundsException("Region " + start + ":" + end + " is outside of 0:" + s.length());
+		return new Iterable<MatchResult>() {
+			public Iterator<MatchResult> iterator() {
+				return new MatchIterator(p, s, start, end, budget);
+			}
+		};
+	}
+	
+	/**
+	 * Searches for the next match when asked whether there is one.
+	 */
+	private static final class MatchIterator implements Iterator<MatchResult> {
+		private final Matcher matcher;
+		private final CharSequence text;
+		private final RegexBudget budget;
+		
+		private MatchResult next;
+		private boolean done;
+		
+		MatchIterator(Pattern p, CharSequence text, int start, int end, RegexBudget budget) {
+			this.matcher = p.matcher(budget.wrap(text));
+			this.matcher.region(start, end);
+			this.text = text;
+			this.budget = budget;
+		}
+		
+		public boolean hasNext() {
+			if (next == null && !done) {
+				try {
+					if (matcher.find())
+						next = new OffsetMatch(matcher, text);
+					else
+						done = true;
+				} catch (RegexBudget.ExceededException e) {
+					// The budget remembers that the search was cut short
+					done = true;
+				} catch (StackOverflowError e) {
+					// The pattern recursed too deep on a long match, which is just as bad a match
+					budget.markExceeded();
+					done = true;
+				}
+			}
+			return next != null;
 		}
-		return results;
+		
+		public MatchResult next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			MatchResult result = next;
+			next = null;
+			return result;
+		}
+	}
+	
+	/**
+	 * Remember the current match of a matcher without copying the text it searches.
+	 * @param m a matcher that just found a match
+	 * @param text the text the matcher searches, without a {@link RegexBudget} wrapped around it
+	 * @return the match, which reads its groups from the text when asked
+	 */
+	public static MatchResult matchResult(Matcher m, CharSequence text) {
+		return new OffsetMatch(m, text);
 	}
 	
+	/**
+	 * Turn Windows and old Mac line breaks into Linux ones. A text that was read through a
+	 * {@link LinuxNewlineReader} has none left, and is returned as it is without a copy.
+	 * @param input the text to normalize
+	 * @return the text with every CR LF and every other CR replaced by LF
+	 */
 	public static String makeLinuxNewlines(String input) {
-		String output = input.replaceAll("(([\r][\n])|([\r]))", "\n");
-		return output;
+		int cr = input.indexOf('\r');
+		if (cr < 0)
+			return input;
+		StringBuilder output = new StringBuilder(input.length());
+		output.append(input, 0, cr);
+		for (int i = cr; i < input.length(); i++) {
+			char c = input.charAt(i);
+			if (c == '\r') {
+				output.append('\n');
+				if (i + 1 < input.length() && input.charAt(i + 1) == '\n')
+					i++;
+			} else {
+				output.append(c);
+			}
+		}
+		return output.toString();
+	}
+	
+	/**
+	 * A match that keeps only the positions of its groups and reads them from the text when asked.
+	 * Matcher.toMatchResult() copies the whole text into a String for every match, which is
+	 * a waste on a {@link MappedText} or any other text that is not a String already.
+	 */
+	private static final class OffsetMatch implements MatchResult {
+		private final CharSequence text;
+		private final int[] starts;
+		private final int[] ends;
+		
+		OffsetMatch(Matcher m, CharSequence text) {
+			this.text = text;
+			int groups = m.groupCount() + 1;
+			this.starts = new int[groups];
+			this.ends = new int[groups];
+			for (int i = 0; i < groups; i++) {
+				starts[i] = m.start(i);
+				ends[i] = m.end(i);
+			}
+		}
+		
+		public int start() {
+			return start(0);
+		}
+		
+		public int start(int group) {
+			checkGroup(group);
+			return starts[group];
+		}
+		
+		public int end() {
+			return end(0);
+		}
+		
+		public int end(int group) {
+			checkGroup(group);
+			return ends[group];
+		}
+		
+		public String group() {
+			return group(0);
+		}
+		
+		public String group(int group) {
+			checkGroup(group);
+			// A group that did not take part in the match has no text
+			if (starts[group] < 0)
+				return null;
+			return text.subSequence(starts[group], ends[group]).toString();
+		}
+		
+		public int groupCount() {
+			return starts.length - 1;
+		}
+		
+		private void checkGroup(int group) {
+			if (group < 0 || group >= starts.length)
+				throw new IndexOutOfBoundsException("No group " + group);
+		}
 	}
 
 }
@@ -0,0 +1,161 @@
+/**
+ * RegexBudget.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.helpers;
+
+/**
+ * Bounds the work regular expressions may do on a single document. Some of the patterns the
+ * filters use backtrack heavily and can run for minutes on unlucky inputs. A budget counts every
+ * character a {@link java.util.regex.Matcher} reads from a text {@link #wrap(CharSequence) wrapped}
+ * by it, and stops the search once a filter or the whole document used up its share. A limited
+ * budget also stops the search when the thread running it is interrupted, so a watchdog can cancel
+ * a document.
+ * <p>
+ * The searches of {@link RegExHelper} end quietly when the budget runs out and return what they
+ * found until then, and {@link #isExceeded()} tells a filter that its results are incomplete.
+ * A budget belongs to a single document and must not be shared between threads.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class RegexBudget {
+
+	/** How many steps to take between two checks for an interrupt, a power of two minus one */
+	private static final long INTERRUPT_CHECK_MASK = 0xFFF;
+
+	private final boolean limited;
+	private final long filterSteps;
+
+	/** What the document has left, not counting the current filter */
+	private long documentLeft;
+	/** What the current filter started with */
+	private long filterBudget;
+	/** What the current filter has left */
+	private long left;
+
+	/** Whether the current filter ran out */
+	private boolean exceeded;
+	/** Whether any filter ran out */
+	private boolean partial;
+
+	/**
+	 * Create a budget for one document.
+	 * @param documentSteps how many characters all filters together may read, 0 or less for no limit
+	 * @param filterSteps how many characters a single filter may read, 0 or less for no limit
+	 */
+	public RegexBudget(long documentSteps, long filterSteps) {
+		this.limited = documentSteps > 0 || filterSteps > 0;
+		this.documentLeft = documentSteps > 0 ? documentSteps : Long.MAX_VALUE;
+		this.filterSteps = filterSteps > 0 ? filterSteps : Long.MAX_VALUE;
+		this.filterBudget = 0;
+		this.left = 0;
+		startFilter();
+	}
+
+	/**
+	 * @return a budget that never runs out and does not wrap texts at all
+	 */
+	public static RegexBudget unlimited() {
+		return new RegexBudget(0, 0);
+	}
+
+	/**
+	 * Give the next filter its share of what the document has left.
+	 */
+	public void startFilter() {
+		documentLeft -= filterBudget - Math.max(left, 0);
+		filterBudget = Math.min(filterSteps, documentLeft);
+		left = filterBudget;
+		exceeded = false;
+	}
+
+	/**
+	 * @return whether the current filter stopped a search because the budget ran out or the thread was interrupted
+	 */
+	public boolean isExceeded() {
+		return exceeded;
+	}
+
+	/**
+	 * @return whether any filter stopped a search on this document
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/**
+	 * Wrap a text, so that reading it counts against this budget.
+	 * @param text the text a regular expression should search
+	 * @return a view of the text that throws an {@link ExceededException} once the budget is used up
+	 */
+	public CharSequence wrap(CharSequence text) {
+		if (!limited)
+			return text;
+		return new BudgetedText(text, this);
+	}
+
+	private void step() {
+		if (--left < 0)
+			exceed("The regular expression budget is used up");
+		if ((left & INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted())
+			exceed("The regular expression search was interrupted");
+	}
+
+	/**
+	 * Record that the current filter gave up a search for a reason the budget cannot see itself,
+	 * such as the regular expression engine running out of stack on a very long match.
+	 */
+	public void markExceeded() {
+		exceeded = true;
+		partial = true;
+	}
+
+	private void exceed(String message) {
+		left = -1;
+		markExceeded();
+		throw new ExceededException(message);
+	}
+
+	/**
+	 * Thrown from inside a regular expression search to stop it.
+	 */
+	public static final class ExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ExceededException(String message) {
+			// Thrown on the hot path, and the stack trace would only show the regex engine
+			super(message, null, false, false);
+		}
+	}
+
+	/**
+	 * A text that counts every character read from it against a budget.
+	 */
+	private static final class BudgetedText implements CharSequence {
+		private final CharSequence text;
+		private final RegexBudget budget;
+
+		BudgetedText(CharSequence text, RegexBudget budget) {
+			this.text = text;
+			this.budget = budget;
+		}
+
+		public int length() {
+			return text.length();
+		}
+
+		public char charAt(int index) {
+			budget.step();
+			return text.charAt(index);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return new BudgetedText(text.subSequence(start, end), budget);
+		}
+
+		public String toString() {
+			return text.toString();
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+/**
+ * SymbolTable.java
+ * This file is part of the infoZilla framework and tool.
+ */
+package io.kuy.infozilla.helpers;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps a single copy of values that repeat over and over, such as the class and method names of
+ * stack frames. Every value that equals one the table already holds is exchanged for the one held,
+ * so a large number of bug reports costs the memory of its different values only.
+ * The table may be used by many threads at the same time.
+ * <p>
+ * The table holds its values weakly: a value nothing else refers to any more is forgotten,
+ * so the table never grows beyond the values still in use.
+ * @author Nicolas Bettenburg
+ *
+ */
+public final class SymbolTable {
+
+	/** How many parts the table is split into, each locked on its own */
+	private static final int STRIPES = 16;
+
+	private static final SymbolTable defaultTable = new SymbolTable();
+
+	private final Stripe[] stripes;
+
+	/** A part of the table, keyed by the values, which the garbage collector may take */
+	private static final class Stripe {
+		private final WeakHashMap<Object, WeakReference<Object>> symbols = new WeakHashMap<Object, WeakReference<Object>>();
+	}
+
+	public SymbolTable() {
+		this.stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	/**
+	 * @return the table shared by all stack traces
+	 */
+	public static SymbolTable getDefault() {
+		return defaultTable;
+	}
+
+	private Stripe stripeOf(Object value) {
+		int hash = value.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+	}
+
+	/**
+	 * Get the copy of a value the table holds.
+	 * @param value the value, which has to be immutable and only equal to values of its own class
+	 * @return the value the table holds that equals the given one, the given value if the table
+	 * 		took it, and null for null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T intern(T value) {
+		if (value == null)
+			return null;
+		Stripe stripe = stripeOf(value);
+		synchronized (stripe) {
+			WeakReference<Object> known = stripe.symbols.get(value);
+			Object symbol = (known != null) ? known.get() : null;
+			if (symbol != null)
+				return (T) symbol;
+			stripe.symbols.put(value, new WeakReference<Object>(value));
+			return value;
+		}
+	}
+
+	/**
+	 * @return how many values the table holds, including some that may be forgotten already
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.symbols.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Forget all values. Values handed out before stay valid, they are just no longer shared with new ones.
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.symbols.clear();
+			}
+		}
+	}
+
+}